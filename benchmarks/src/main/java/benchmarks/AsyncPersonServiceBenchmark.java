@@ -0,0 +1,94 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import services.AsyncPersonService;
+import services.ConcurrentPersonService;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues bursts of {@code concurrentRequests} lookups through AsyncPersonService and waits for all of them. The
+ * {@code executor} parameter compares one virtual thread per call against a fixed pool of platform threads; both
+ * use the same connection-pool sized semaphore.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncPersonServiceBenchmark {
+
+    @Param({"10000"})
+    public int concurrentRequests;
+
+    @Param({"100000"})
+    public int datasetSize;
+
+    @Param({"virtual", "platform"})
+    public String executor;
+
+    @Param({"200"})
+    public int platformThreads;
+
+    @Param({"20"})
+    public int poolSize;
+
+    private EntityManagerFactory emf;
+    private AsyncPersonService service;
+    private int minId;
+    private int maxId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("async_person_service",
+                Map.of("hibernate.hikari.maximumPoolSize", String.valueOf(poolSize)));
+        new ConcurrentPersonService(emf).persistAll(EmbeddedDatabase.createPeople(0, datasetSize), 50);
+        EntityManager em = emf.createEntityManager();
+        Object[] range = (Object[]) em.createQuery("SELECT MIN(p.id), MAX(p.id) FROM Person p").getSingleResult();
+        minId = (Integer) range[0];
+        maxId = (Integer) range[1];
+        em.close();
+        ExecutorService executorService = executor.equals("virtual")
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(platformThreads);
+        service = new AsyncPersonService(emf, executorService, poolSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.close();
+        emf.close();
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(minId, maxId + 1);
+    }
+
+    @Benchmark
+    public int find() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[concurrentRequests];
+        for (int i = 0; i < concurrentRequests; i++) {
+            futures[i] = service.find(randomId());
+        }
+        CompletableFuture.allOf(futures).join();
+        return futures.length;
+    }
+
+    @Benchmark
+    public int findPersonByName() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[concurrentRequests];
+        for (int i = 0; i < concurrentRequests; i++) {
+            futures[i] = service.findPersonByName("Person " + (randomId() - minId));
+        }
+        CompletableFuture.allOf(futures).join();
+        return futures.length;
+    }
+}
@@ -0,0 +1,87 @@
+package benchmarks;
+
+import domain.Person;
+import org.openjdk.jmh.annotations.*;
+import services.PersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares changing {@code rows} people one entity at a time, with updatePersonDb and remove, against the set-based
+ * updateWhere and removeAll. Every iteration persists a fresh set of rows and runs the operation once over all of
+ * them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BulkOperationsBenchmark {
+
+    @Param({"10000"})
+    public int rows;
+
+    private EntityManagerFactory emf;
+    private PersonService service;
+    private List<Integer> ids;
+    private int nextPerson;
+    private int lowestId;
+    private int highestId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("bulk_operations");
+        service = new PersonService(emf.createEntityManager());
+    }
+
+    @Setup(Level.Iteration)
+    public void persistRows() {
+        List<Person> people = EmbeddedDatabase.createPeople(nextPerson, rows);
+        nextPerson += rows;
+        service.persistAll(people, 50);
+        service.clear();
+        ids = new ArrayList<>(rows);
+        for (Person person : people) {
+            ids.add(person.getId());
+        }
+        lowestId = ids.get(0);
+        highestId = ids.get(ids.size() - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.closeEntityManager();
+        emf.close();
+    }
+
+    @Benchmark
+    public int updateEachEntity() {
+        for (Integer id : ids) {
+            service.updatePersonDb(id, "email", "updated" + id + "@example.com");
+        }
+        return ids.size();
+    }
+
+    @Benchmark
+    public int updateWhere() {
+        return service.updateWhere((builder, root) -> builder.between(root.get("id"), lowestId, highestId),
+                "email", "updated@example.com");
+    }
+
+    @Benchmark
+    public int removeEachEntity() {
+        for (Integer id : ids) {
+            service.remove(id);
+        }
+        return ids.size();
+    }
+
+    @Benchmark
+    public int removeAll() {
+        return service.removeAll(ids);
+    }
+}
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import domain.Person;
+import events.ChangeType;
+import events.PersonChangeBus;
+import events.PersonChangeEvent;
+import services.ConcurrentPersonService;
+import services.PersonService;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Shows that a PersonChangeBus attached to an EntityManagerFactory publishes committed Person changes and nothing
+ * for a rolled back transaction, then measures how many events per second the bus delivers from several publishing
+ * threads to several subscribers. The publishers are paced to the given total rate, or publish as fast as they can
+ * with a rate of 0, which shows subscribers being lapped instead of slowing the publishers down.
+ * <p>
+ * Run with {@code java -cp benchmarks/target/benchmarks.jar benchmarks.ChangeEventCheck [events] [publishers]
+ * [subscribers] [events per second]}.
+ */
+public class ChangeEventCheck {
+
+    private static final int DEFAULT_EVENTS = 10_000_000;
+    private static final int DEFAULT_RATE = 1_000_000;
+    private static final int PACING_BATCH = 1_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_EVENTS;
+        int publishers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int subscribers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int rate = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_RATE;
+        captureCommits();
+        measureThroughput(events, publishers, subscribers, rate);
+    }
+
+    private static void captureCommits() {
+        EntityManagerFactory emf = EmbeddedDatabase.create("change_events");
+        PersonChangeBus bus = new PersonChangeBus();
+        bus.attach(emf);
+        ConcurrentLinkedQueue<PersonChangeEvent> received = new ConcurrentLinkedQueue<>();
+        bus.subscribe("print", received::add);
+        try {
+            ConcurrentPersonService service = new ConcurrentPersonService(emf);
+            List<Person> people = EmbeddedDatabase.createPeople(0, 2);
+            service.persistAll(people, 50);
+            Integer id = people.get(0).getId();
+            service.updatePersonDb(id, "email", "changed@example.com");
+            service.remove(people.get(1).getId());
+
+            EntityManager entityManager = emf.createEntityManager();
+            entityManager.getTransaction().begin();
+            entityManager.find(Person.class, id).setName("Rolled back");
+            entityManager.flush();
+            entityManager.getTransaction().rollback();
+            entityManager.close();
+        } finally {
+            bus.close();
+            emf.close();
+        }
+        received.forEach(System.out::println);
+        System.out.printf("%d events for 2 inserts, 1 update, 1 delete and 1 rolled back update%n", received.size());
+    }
+
+    private static void measureThroughput(int events, int publishers, int subscribers, int rate)
+            throws InterruptedException {
+        PersonChangeBus bus = new PersonChangeBus(1 << 16);
+        LongAdder handled = new LongAdder();
+        List<PersonChangeBus.Subscription> subscriptions = new ArrayList<>();
+        for (int i = 0; i < subscribers; i++) {
+            subscriptions.add(bus.subscribe("count-" + i, event -> handled.increment()));
+        }
+        Map<String, Object> changes = Map.of("email", "person@example.com");
+        CountDownLatch done = new CountDownLatch(publishers);
+        double nanosPerEvent = rate > 0 ? 1e9 * publishers / rate : 0;
+        long start = System.nanoTime();
+        for (int p = 0; p < publishers; p++) {
+            int share = events / publishers + (p < events % publishers ? 1 : 0);
+            new Thread(() -> {
+                for (int i = 0; i < share; i++) {
+                    if (i % PACING_BATCH == 0) {
+                        long due = start + (long) (i * nanosPerEvent);
+                        for (long now = System.nanoTime(); now < due; now = System.nanoTime()) {
+                            LockSupport.parkNanos(due - now);
+                        }
+                    }
+                    bus.publish(ChangeType.UPDATE, i, 1, changes);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        double publishSeconds = (System.nanoTime() - start) / 1e9;
+        long lost = 0;
+        for (PersonChangeBus.Subscription subscription : subscriptions) {
+            subscription.close();
+            lost += subscription.getLostCount();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d events from %d publishers at %s in %.2f s (%,.0f events/s published); %d subscribers "
+                        + "handled %,d and lost %,d in %.2f s (%,.0f events/s per subscriber)%n", events,
+                publishers, rate > 0 ? String.format("%,d events/s", rate) : "full speed", publishSeconds,
+                events / publishSeconds, subscribers, handled.sum(), lost, seconds,
+                handled.sum() / seconds / Math.max(1, subscribers));
+    }
+}
@@ -0,0 +1,89 @@
+package benchmarks;
+
+import domain.Person;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import services.ConcurrentPersonService;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of ConcurrentPersonService when many threads share one instance over a HikariCP pool.
+ * Running this class directly repeats the benchmarks with 1, 2, 4, 8, 16 and 32 worker threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentPersonServiceBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32};
+
+    @Param({"100000"})
+    public int datasetSize;
+
+    @Param({"32"})
+    public int poolSize;
+
+    private EntityManagerFactory emf;
+    private ConcurrentPersonService service;
+    private int minId;
+    private int maxId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("concurrent_person_service",
+                Map.of("hibernate.hikari.maximumPoolSize", String.valueOf(poolSize)));
+        service = new ConcurrentPersonService(emf);
+        service.persistAll(EmbeddedDatabase.createPeople(0, datasetSize), 50);
+        EntityManager em = emf.createEntityManager();
+        Object[] range = (Object[]) em.createQuery("SELECT MIN(p.id), MAX(p.id) FROM Person p").getSingleResult();
+        minId = (Integer) range[0];
+        maxId = (Integer) range[1];
+        em.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        emf.close();
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(minId, maxId + 1);
+    }
+
+    @Benchmark
+    public Person find() {
+        return service.find(randomId());
+    }
+
+    @Benchmark
+    public List<Person> findPersonByName() {
+        return service.findPersonByName("Person " + (randomId() - minId));
+    }
+
+    @Benchmark
+    public String updatePersonDb() {
+        return service.updatePersonDb(randomId(), "email",
+                "updated" + ThreadLocalRandom.current().nextInt() + "@example.com");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREAD_COUNTS) {
+            new Runner(new OptionsBuilder()
+                    .include(ConcurrentPersonServiceBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build())
+                    .run();
+        }
+    }
+}
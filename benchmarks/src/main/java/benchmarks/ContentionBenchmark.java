@@ -0,0 +1,114 @@
+package benchmarks;
+
+import domain.Person;
+import metrics.OperationMetrics;
+import metrics.PersonOperation;
+import metrics.PersonServiceMetrics;
+import org.openjdk.jmh.annotations.*;
+import services.PersonService;
+import services.RetryPolicy;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.LockModeType;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Has 64 threads update the same few hot Person rows, comparing PersonService.updateWithRetry, which lets writers
+ * collide and retries the losers, with PersonService.withLock, which takes a PESSIMISTIC_WRITE row lock before
+ * changing the person, so writers queue on the lock instead. The retry conflict rate, the lock wait time and any
+ * failed updates are printed when each trial ends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class ContentionBenchmark {
+
+    private static final RetryPolicy RETRY_POLICY = new RetryPolicy(20, Duration.ofMillis(1), Duration.ofMillis(50));
+
+    @Param({"1", "4"})
+    public int hotRows;
+
+    private EntityManagerFactory emf;
+    private PersonServiceMetrics metrics;
+    private int firstId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("contention", Map.of(
+                "javax.persistence.jdbc.url", "jdbc:h2:mem:contention;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+                "hibernate.hikari.maximumPoolSize", "64"));
+        metrics = new PersonServiceMetrics();
+        PersonService seeder = new PersonService(emf.createEntityManager());
+        seeder.persistAll(EmbeddedDatabase.createPeople(0, hotRows), 50);
+        firstId = seeder.findPage(null, 1).content().get(0).getId();
+        seeder.closeEntityManager();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        OperationMetrics retries = metrics.get(PersonOperation.UPDATE_WITH_RETRY);
+        if (retries.getCallCount() > 0) {
+            System.out.printf("%nupdateWithRetry: %,d calls, %,d retried conflicts (%.1f%% of attempts), %,d failed%n",
+                    retries.getCallCount(), retries.getConflictCount(), retries.getConflictRate() * 100,
+                    retries.getErrorCount());
+        }
+        OperationMetrics locked = metrics.get(PersonOperation.WITH_LOCK);
+        if (locked.getCallCount() > 0) {
+            OperationMetrics lockWait = metrics.get(PersonOperation.LOCK_WAIT);
+            System.out.printf("%nwithLock: %,d calls, lock wait p50 %,d us, p99 %,d us, %,d failed%n",
+                    locked.getCallCount(), lockWait.getP50LatencyMicros(), lockWait.getP99LatencyMicros(),
+                    locked.getErrorCount());
+        }
+        emf.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        private PersonService service;
+
+        @Setup(Level.Trial)
+        public void setUp(ContentionBenchmark benchmark) {
+            service = new PersonService(benchmark.emf.createEntityManager());
+            service.setMetrics(benchmark.metrics);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            service.closeEntityManager();
+        }
+    }
+
+    private int hotId() {
+        return firstId + ThreadLocalRandom.current().nextInt(hotRows);
+    }
+
+    private static String newEmail() {
+        return "updated" + ThreadLocalRandom.current().nextInt() + "@example.com";
+    }
+
+    @Benchmark
+    public Person optimisticRetry(Writer writer) {
+        // Start both variants from a fresh read rather than the copy the last update left in the context
+        writer.service.clear();
+        String email = newEmail();
+        return writer.service.updateWithRetry(hotId(), person -> person.setEmail(email), RETRY_POLICY);
+    }
+
+    @Benchmark
+    public Person pessimisticWrite(Writer writer) {
+        writer.service.clear();
+        String email = newEmail();
+        return writer.service.withLock(hotId(), LockModeType.PESSIMISTIC_WRITE, PersonService.LOCK_WAIT_FOREVER,
+                person -> {
+                    person.setEmail(email);
+                    return person;
+                });
+    }
+}
@@ -0,0 +1,74 @@
+package benchmarks;
+
+import services.ConcurrentPersonService;
+import services.PersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Simulates a long-running session on one PersonService: random finds and name searches over every row, without
+ * ever calling clear. Reports the number of managed entities and the heap in use as it goes, so the cap set with
+ * setMaxManagedEntities can be seen to keep both flat. The rows are stored in an H2 file database, so the database
+ * itself does not hold them on the heap.
+ * <p>
+ * Run with {@code java -Xmx128m -cp benchmarks/target/benchmarks.jar benchmarks.ContextSizeCheck [rows]
+ * [maxManagedEntities]}; a cap of 0 shows the unbounded behaviour.
+ */
+public class ContextSizeCheck {
+
+    private static final int DEFAULT_ROWS = 500_000;
+    private static final int DEFAULT_MAX_MANAGED_ENTITIES = 10_000;
+    private static final int SEED_CHUNK = 10_000;
+    private static final int REPORT_EVERY = 100_000;
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        int maxManagedEntities = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_MANAGED_ENTITIES;
+        Path directory = Files.createTempDirectory("context-size-check");
+        EntityManagerFactory emf = EmbeddedDatabase.create("context_size", Map.of(
+                "javax.persistence.jdbc.url", "jdbc:h2:file:" + directory.resolve("people"),
+                "hibernate.cache.use_second_level_cache", "false",
+                "hibernate.cache.use_query_cache", "false"));
+        try {
+            ConcurrentPersonService seeder = new ConcurrentPersonService(emf);
+            for (int first = 0; first < rows; first += SEED_CHUNK) {
+                seeder.persistAll(EmbeddedDatabase.createPeople(first, Math.min(SEED_CHUNK, rows - first)), 50);
+            }
+            System.out.printf("Seeded %,d rows, max heap %,d MB, cap %,d%n", rows,
+                    Runtime.getRuntime().maxMemory() >> 20, maxManagedEntities);
+
+            PersonService service = new PersonService(emf.createEntityManager());
+            service.setMaxManagedEntities(maxManagedEntities);
+            int firstId = service.findPage(null, 1).content().get(0).getId();
+            long start = System.nanoTime();
+            for (int operation = 1; operation <= rows * 2; operation++) {
+                int number = ThreadLocalRandom.current().nextInt(rows);
+                if (operation % 10 == 0) {
+                    service.findPersonByNamePrefix("Person " + number);
+                } else {
+                    service.find(firstId + number);
+                }
+                if (operation % REPORT_EVERY == 0) {
+                    System.out.printf("%,d operations, %,d managed entities, heap used %,d MB%n",
+                            operation, service.getManagedEntityCount(), usedHeap() >> 20);
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%,d operations in %.1f s (%,.0f ops/s)%n", rows * 2, seconds, rows * 2 / seconds);
+            service.closeEntityManager();
+        } finally {
+            emf.close();
+        }
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
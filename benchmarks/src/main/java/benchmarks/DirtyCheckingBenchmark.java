@@ -0,0 +1,60 @@
+package benchmarks;
+
+import domain.Person;
+import org.openjdk.jmh.annotations.*;
+import services.PersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Changes one of {@code managedEntities} people held by a long-lived persistence context and flushes. Without
+ * bytecode enhancement the flush compares every managed person against its snapshot, so its cost grows with the
+ * size of the context; with dirty tracking enhancement it only visits the people that recorded a change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirtyCheckingBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int managedEntities;
+
+    private EntityManagerFactory emf;
+    private PersonService service;
+    private List<Person> people;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("dirty_checking");
+        service = new PersonService(emf.createEntityManager());
+        service.persistAll(EmbeddedDatabase.createPeople(0, managedEntities), 50);
+        int firstId = service.findPage(null, 1).content().get(0).getId();
+        List<Integer> ids = new ArrayList<>(managedEntities);
+        for (int id = firstId; id < firstId + managedEntities; id++) {
+            ids.add(id);
+        }
+        service.clear();
+        people = service.findAll(ids);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.closeEntityManager();
+        emf.close();
+    }
+
+    @Benchmark
+    public void changeOneAndFlush() {
+        Person person = people.get(ThreadLocalRandom.current().nextInt(people.size()));
+        person.setName("Changed " + counter++);
+        service.flush();
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import domain.Person;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts the application's persistence unit against an in-memory H2 database, so the benchmarks run without a
+ * MySQL server.
+ */
+public final class EmbeddedDatabase {
+
+    public static final String PERSISTENCE_UNIT = "example-jpa";
+
+    private EmbeddedDatabase() {
+    }
+
+    /**
+     * Creates an EntityManagerFactory for the application's persistence unit, pointed at a fresh in-memory H2
+     * database with the given name.
+     *
+     * @param name the name of the in-memory database
+     * @return the new EntityManagerFactory
+     */
+    public static EntityManagerFactory create(String name) {
+        return create(name, Map.of());
+    }
+
+    /**
+     * Creates an EntityManagerFactory for the application's persistence unit, pointed at a fresh in-memory H2
+     * database with the given name and with additional property overrides.
+     *
+     * @param name      the name of the in-memory database
+     * @param overrides extra persistence unit properties, applied after the H2 connection settings
+     * @return the new EntityManagerFactory
+     */
+    public static EntityManagerFactory create(String name, Map<String, Object> overrides) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        properties.put("javax.persistence.jdbc.driver", "org.h2.Driver");
+        properties.put("javax.persistence.jdbc.user", "sa");
+        properties.put("javax.persistence.jdbc.password", "");
+        properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.putAll(overrides);
+        return Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, properties);
+    }
+
+    /**
+     * Creates transient Person objects with predictable names and emails.
+     *
+     * @param first the number used for the first person
+     * @param count the number of people to create
+     * @return the new people, not yet persisted
+     */
+    public static List<Person> createPeople(int first, int count) {
+        List<Person> people = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            people.add(new Person(null, "Person " + i, "person" + i + "@example.com"));
+        }
+        return people;
+    }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import exporter.ExportFormat;
+import exporter.ExportReport;
+import exporter.PersonExporter;
+import services.ConcurrentPersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Seeds an H2 file database and exports it with PersonExporter, printing the progress and the rows per second. Then
+ * deletes one shard file and exports again into the same directory, to show that only the missing shard is written.
+ * <p>
+ * Run with {@code java -cp benchmarks/target/benchmarks.jar benchmarks.ExportCheck [rows] [csv|ndjson]
+ * [parallelism]}.
+ */
+public class ExportCheck {
+
+    private static final int DEFAULT_ROWS = 1_000_000;
+    private static final int SEED_CHUNK = 10_000;
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        ExportFormat format = args.length > 1 ? ExportFormat.valueOf(args[1].toUpperCase()) : ExportFormat.CSV;
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Path directory = Files.createTempDirectory("export-check");
+        EntityManagerFactory emf = EmbeddedDatabase.create("export", Map.of(
+                "javax.persistence.jdbc.url", "jdbc:h2:file:" + directory.resolve("people"),
+                "hibernate.hikari.maximumPoolSize", String.valueOf(parallelism + 1)));
+        try {
+            ConcurrentPersonService seeder = new ConcurrentPersonService(emf);
+            for (int first = 0; first < rows; first += SEED_CHUNK) {
+                seeder.persistAll(EmbeddedDatabase.createPeople(first, Math.min(SEED_CHUNK, rows - first)), 50);
+            }
+            System.out.printf("Seeded %,d rows%n", rows);
+
+            Path output = directory.resolve("export");
+            PersonExporter exporter = new PersonExporter(emf, parallelism, parallelism * 4, 1000, 1 << 20, 1,
+                    Duration.ofSeconds(2));
+            ExportReport first = exporter.export(output, format);
+            System.out.printf("First run: %s, %.1f bytes per row%n", first, (double) first.bytes() / first.rows());
+
+            Path deleted;
+            try (Stream<Path> files = Files.list(output)) {
+                deleted = files.filter(file -> file.toString().endsWith(format.extension())).sorted()
+                        .findFirst().orElseThrow();
+            }
+            Files.delete(deleted);
+            ExportReport second = exporter.export(output, format);
+            System.out.printf("Second run after deleting %s: %s%n", deleted.getFileName(), second);
+        } finally {
+            emf.close();
+        }
+    }
+}
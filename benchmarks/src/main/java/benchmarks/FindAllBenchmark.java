@@ -0,0 +1,86 @@
+package benchmarks;
+
+import domain.Person;
+import org.openjdk.jmh.annotations.*;
+import services.PersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up {@code lookups} random ids with PersonService.findAll against calling find once per id. The
+ * persistence context is cleared before every invocation. With a cold second-level cache every id has to come from
+ * the database; with a warm one the cache holds every person.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FindAllBenchmark {
+
+    @Param({"100000"})
+    public int datasetSize;
+
+    @Param({"10000"})
+    public int lookups;
+
+    @Param({"cold", "warm"})
+    public String secondLevelCache;
+
+    private EntityManagerFactory emf;
+    private PersonService service;
+    private int firstId;
+    private List<Integer> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("find_all");
+        service = new PersonService(emf.createEntityManager());
+        for (int first = 0; first < datasetSize; first += 50_000) {
+            service.persistAll(EmbeddedDatabase.createPeople(first, Math.min(50_000, datasetSize - first)), 50);
+        }
+        firstId = service.findPage(null, 1).content().get(0).getId();
+        if (secondLevelCache.equals("warm")) {
+            for (int id = firstId; id < firstId + datasetSize; id++) {
+                service.find(id);
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        service.clear();
+        if (secondLevelCache.equals("cold")) {
+            emf.getCache().evictAll();
+        }
+        ids = new ArrayList<>(lookups);
+        for (int i = 0; i < lookups; i++) {
+            ids.add(firstId + ThreadLocalRandom.current().nextInt(datasetSize));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.closeEntityManager();
+        emf.close();
+    }
+
+    @Benchmark
+    public List<Person> findLoop() {
+        List<Person> people = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            people.add(service.find(id));
+        }
+        return people;
+    }
+
+    @Benchmark
+    public List<Person> findAll() {
+        return service.findAll(ids);
+    }
+}
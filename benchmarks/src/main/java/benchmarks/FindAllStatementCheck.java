@@ -0,0 +1,61 @@
+package benchmarks;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import services.PersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Calls PersonService.findAll with every number of ids from 1 to {@code lookups}, each time with an empty
+ * persistence context and second-level cache so every id is read from the database, and counts the distinct SQL
+ * statements Hibernate prepared. With IN clause padding the number of statements grows with the logarithm of the
+ * largest id count rather than with the number of distinct counts; the run without padding is shown for comparison.
+ * <p>
+ * Run with {@code java -cp benchmarks/target/benchmarks.jar benchmarks.FindAllStatementCheck [people] [lookups]}.
+ */
+public class FindAllStatementCheck {
+
+    public static void main(String[] args) {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 2_500;
+        for (boolean padding : new boolean[]{true, false}) {
+            Set<String> statements = ConcurrentHashMap.newKeySet();
+            StatementInspector inspector = sql -> {
+                statements.add(sql);
+                return sql;
+            };
+            EntityManagerFactory emf = EmbeddedDatabase.create("find_all_statements", Map.of(
+                    "hibernate.generate_statistics", "false",
+                    "hibernate.query.in_clause_parameter_padding", String.valueOf(padding),
+                    "hibernate.session_factory.statement_inspector", inspector));
+            PersonService service = new PersonService(emf.createEntityManager());
+            try {
+                service.persistAll(EmbeddedDatabase.createPeople(0, people), 50);
+                int firstId = service.findPage(null, 1).content().get(0).getId();
+                SplittableRandom random = new SplittableRandom(42);
+                long rows = 0;
+                statements.clear();
+                for (int count = 1; count <= lookups; count++) {
+                    service.clear();
+                    emf.getCache().evictAll();
+                    List<Integer> ids = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        ids.add(firstId + random.nextInt(people));
+                    }
+                    rows += service.findAll(ids).stream().filter(person -> person != null).count();
+                }
+                System.out.printf("Padding %s: %,d calls with 1 to %,d ids found %,d people using %,d distinct "
+                        + "statements%n", padding ? "on" : "off", lookups, lookups, rows, statements.size());
+            } finally {
+                service.closeEntityManager();
+                emf.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import importer.ImportFormat;
+import importer.ImportReport;
+import importer.PersonImporter;
+import services.ConcurrentPersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Generates a CSV or NDJSON file with one malformed line in every thousand and imports it with PersonImporter into
+ * an H2 file database, printing the progress, the rows per second and the number of rejected lines.
+ * <p>
+ * Run with {@code java -cp benchmarks/target/benchmarks.jar benchmarks.ImportCheck [rows] [csv|ndjson]}.
+ */
+public class ImportCheck {
+
+    private static final int DEFAULT_ROWS = 1_000_000;
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        ImportFormat format = args.length > 1 ? ImportFormat.valueOf(args[1].toUpperCase()) : ImportFormat.CSV;
+        Path directory = Files.createTempDirectory("import-check");
+        Path file = directory.resolve(format == ImportFormat.CSV ? "people.csv" : "people.ndjson");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (format == ImportFormat.CSV) {
+                writer.write("name,email\n");
+            }
+            for (int i = 0; i < rows; i++) {
+                if (i % 1000 == 999) {
+                    writer.write(format == ImportFormat.CSV ? "\"unterminated,x\n" : "{\"name\": \"Person " + i + "\n");
+                } else if (format == ImportFormat.CSV) {
+                    writer.write("Person " + i + ",person" + i + "@example.com\n");
+                } else {
+                    writer.write("{\"name\": \"Person " + i + "\", \"email\": \"person" + i + "@example.com\"}\n");
+                }
+            }
+        }
+        System.out.printf("Generated %,d lines, %,d MB%n", rows, Files.size(file) >> 20);
+        EntityManagerFactory emf = EmbeddedDatabase.create("import", Map.of(
+                "javax.persistence.jdbc.url", "jdbc:h2:file:" + directory.resolve("people"),
+                "hibernate.hikari.maximumPoolSize", "8"));
+        try {
+            PersonImporter importer = new PersonImporter(new ConcurrentPersonService(emf),
+                    Runtime.getRuntime().availableProcessors(), 4, 8 << 20, 50, Duration.ofSeconds(2));
+            ImportReport report = importer.importFile(file);
+            long stored = (Long) emf.createEntityManager().createQuery("SELECT COUNT(p) FROM Person p")
+                    .getSingleResult();
+            System.out.printf("%s; %,d rows in the table; rejected lines in %s%n", report, stored,
+                    file.resolveSibling(file.getFileName() + ".rejected"));
+        } finally {
+            emf.close();
+        }
+    }
+}
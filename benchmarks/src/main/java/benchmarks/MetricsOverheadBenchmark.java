@@ -0,0 +1,59 @@
+package benchmarks;
+
+import domain.Person;
+import metrics.PersonServiceMetrics;
+import org.openjdk.jmh.annotations.*;
+import services.PersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what recording metrics costs on the PersonService hot path, using a find served from the persistence
+ * context so the instrumentation is a visible share of the call. Run with {@code -prof gc} to confirm that the
+ * disabled variant allocates no more per operation than a service without metrics attached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+    @Param({"none", "disabled", "enabled"})
+    public String metrics;
+
+    @Param({"1000"})
+    public int datasetSize;
+
+    private EntityManagerFactory emf;
+    private PersonService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("metrics_overhead");
+        service = new PersonService(emf.createEntityManager());
+        service.persistAll(EmbeddedDatabase.createPeople(0, datasetSize), 50);
+        for (int id = 1; id <= datasetSize; id++) {
+            service.find(id);
+        }
+        if (!metrics.equals("none")) {
+            PersonServiceMetrics personServiceMetrics = new PersonServiceMetrics();
+            personServiceMetrics.setEnabled(metrics.equals("enabled"));
+            service.setMetrics(personServiceMetrics);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.closeEntityManager();
+        emf.close();
+    }
+
+    @Benchmark
+    public Person find() {
+        return service.find(ThreadLocalRandom.current().nextInt(datasetSize) + 1);
+    }
+}
@@ -0,0 +1,69 @@
+package benchmarks;
+
+import domain.Person;
+import org.openjdk.jmh.annotations.*;
+import services.PersonNameIndex;
+import services.PersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the three ways of searching people by name. Every variant looks up the same people: those whose name
+ * contains "Person k" for a random k. The variants are a leading-wildcard LIKE that scans the table, a prefix LIKE
+ * answered from the name index, and the in-process trigram index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NameSearchBenchmark {
+
+    @Param({"100000"})
+    public int datasetSize;
+
+    private EntityManagerFactory emf;
+    private PersonService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("name_search");
+        service = new PersonService(emf.createEntityManager());
+        service.setNameIndex(new PersonNameIndex());
+        service.persistAll(EmbeddedDatabase.createPeople(0, datasetSize), 50);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearContext() {
+        service.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.closeEntityManager();
+        emf.close();
+    }
+
+    private int randomNumber() {
+        return ThreadLocalRandom.current().nextInt(datasetSize);
+    }
+
+    @Benchmark
+    public List<Person> leadingWildcard() {
+        return service.findPersonByName("rson " + randomNumber());
+    }
+
+    @Benchmark
+    public List<Person> prefix() {
+        return service.findPersonByNamePrefix("Person " + randomNumber());
+    }
+
+    @Benchmark
+    public List<Person> trigramIndex() {
+        return service.findPersonByNameContaining("rson " + randomNumber());
+    }
+}
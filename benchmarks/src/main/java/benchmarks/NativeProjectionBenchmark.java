@@ -0,0 +1,66 @@
+package benchmarks;
+
+import domain.PersonView;
+import org.openjdk.jmh.annotations.*;
+import services.PersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways of reading every row of a native query: as managed entities through the PersonResult mapping,
+ * as PersonView records through the PersonViewResult constructor mapping, and as PersonView records through
+ * createNativeRecordQuery. The caches are evicted and the persistence context is cleared before every invocation.
+ * Run with {@code -prof gc} to compare the allocation per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NativeProjectionBenchmark {
+
+    private static final String SQL = "SELECT id, name, email, version FROM Person";
+
+    @Param({"20000"})
+    public int datasetSize;
+
+    private EntityManagerFactory emf;
+    private PersonService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("native_projection");
+        service = new PersonService(emf.createEntityManager());
+        service.persistAll(EmbeddedDatabase.createPeople(0, datasetSize), 50);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearContext() {
+        service.clear();
+        emf.getCache().evictAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.closeEntityManager();
+        emf.close();
+    }
+
+    @Benchmark
+    public List<?> entityMapping() {
+        return service.createNativeQuery(SQL, "PersonResult").getResultList();
+    }
+
+    @Benchmark
+    public List<?> constructorMapping() {
+        return service.createNativeQuery(SQL, "PersonViewResult").getResultList();
+    }
+
+    @Benchmark
+    public List<PersonView> recordQuery() {
+        return service.createNativeRecordQuery(SQL, PersonView.class).getResultList();
+    }
+}
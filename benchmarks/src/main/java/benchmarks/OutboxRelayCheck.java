@@ -0,0 +1,127 @@
+package benchmarks;
+
+import domain.Person;
+import domain.PersonOutboxEvent;
+import events.OutboxRelay;
+import events.PersonOutbox;
+import services.ConcurrentPersonService;
+import services.PersonService;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks the transactional outbox against H2. First, PersonService.persist, updatePersonDb and remove each leave one
+ * outbox row and a rolled back update leaves none. Then the given number of people are persisted, leaving as many
+ * rows, and several OutboxRelay threads drain this backlog into an in-process sink that records every event id, printing
+ * the throughput and lag as they go and finally any event delivered twice or never. The lag includes the time the
+ * rows waited while the backlog was being seeded.
+ * <p>
+ * Run with {@code java -cp benchmarks/target/benchmarks.jar benchmarks.OutboxRelayCheck [rows] [relay threads]
+ * [batch size]}.
+ */
+public class OutboxRelayCheck {
+
+    private static final int DEFAULT_ROWS = 1_000_000;
+    private static final int SEED_CHUNK = 10_000;
+    private static final int PROGRESS_TICK_MILLIS = 50;
+    private static final int PROGRESS_EVERY_TICKS = 40;
+
+    public static void main(String[] args) throws InterruptedException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        EntityManagerFactory emf = EmbeddedDatabase.create("outbox", Map.of(
+                "hibernate.hikari.maximumPoolSize", String.valueOf(threads + 2),
+                "hibernate.cache.use_second_level_cache", "false",
+                "hibernate.cache.use_query_cache", "false"));
+        PersonOutbox.attach(emf);
+        try {
+            recordChanges(emf);
+            drain(emf, rows, threads, batchSize);
+        } finally {
+            emf.close();
+        }
+    }
+
+    private static void recordChanges(EntityManagerFactory emf) {
+        PersonService service = new PersonService(emf.createEntityManager());
+        Person person = new Person(null, "Outbox Person", "outbox@example.com");
+        service.persist(person);
+        service.updatePersonDb(person.getId(), "email", "changed@example.com");
+
+        EntityManager entityManager = emf.createEntityManager();
+        entityManager.getTransaction().begin();
+        entityManager.find(Person.class, person.getId()).setName("Rolled back");
+        entityManager.flush();
+        entityManager.getTransaction().rollback();
+        entityManager.close();
+
+        service.remove(person.getId());
+        service.closeEntityManager();
+        entityManager = emf.createEntityManager();
+        List<PersonOutboxEvent> events = entityManager
+                .createQuery("SELECT e FROM PersonOutboxEvent e ORDER BY e.id", PersonOutboxEvent.class)
+                .getResultList();
+        events.forEach(System.out::println);
+        System.out.printf("%d outbox rows for a persist, an update, a rolled back update and a remove%n",
+                events.size());
+        entityManager.getTransaction().begin();
+        entityManager.createQuery("DELETE FROM PersonOutboxEvent").executeUpdate();
+        entityManager.getTransaction().commit();
+        entityManager.close();
+    }
+
+    private static void drain(EntityManagerFactory emf, int rows, int threads, int batchSize)
+            throws InterruptedException {
+        ConcurrentPersonService seeder = new ConcurrentPersonService(emf);
+        for (int first = 0; first < rows; first += SEED_CHUNK) {
+            seeder.persistAll(EmbeddedDatabase.createPeople(first, Math.min(SEED_CHUNK, rows - first)), 50);
+        }
+        EntityManager entityManager = emf.createEntityManager();
+        long minId = entityManager.createQuery("SELECT MIN(e.id) FROM PersonOutboxEvent e", Long.class)
+                .getSingleResult();
+        entityManager.close();
+
+        BitSet seen = new BitSet(rows);
+        AtomicLong duplicates = new AtomicLong();
+        OutboxRelay relay = new OutboxRelay(emf, events -> {
+            synchronized (seen) {
+                for (PersonOutboxEvent event : events) {
+                    int index = (int) (event.getId() - minId);
+                    if (seen.get(index)) {
+                        duplicates.incrementAndGet();
+                    }
+                    seen.set(index);
+                }
+            }
+        }, threads, batchSize, Duration.ofMillis(10));
+        long seeded = relay.countPending() + relay.getDeliveredCount();
+        System.out.printf("Seeded %,d outbox rows; draining with %d relay threads in batches of %d%n",
+                seeded, threads, batchSize);
+        long start = System.nanoTime();
+        for (int tick = 1; relay.getDeliveredCount() < seeded; tick++) {
+            Thread.sleep(PROGRESS_TICK_MILLIS);
+            if (tick % PROGRESS_EVERY_TICKS == 0) {
+                System.out.printf("%,d delivered, %,.0f events/s, lag %,d ms%n", relay.getDeliveredCount(),
+                        relay.getEventsPerSecond(), relay.getLagMillis());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        relay.close();
+        int delivered;
+        synchronized (seen) {
+            delivered = seen.cardinality();
+        }
+        System.out.printf("Drained %,d events in %.1f s (%,.0f events/s) in %,d batches, %d failed; max lag %,d ms; "
+                        + "%,d distinct events delivered, %,d duplicates, %,d missing, %,d left in the outbox%n",
+                relay.getDeliveredCount(), seconds, relay.getDeliveredCount() / seconds, relay.getBatchCount(),
+                relay.getFailedBatchCount(), relay.getMaxLagMillis(), delivered, duplicates.get(), rows - delivered,
+                relay.countPending());
+    }
+}
@@ -0,0 +1,95 @@
+package benchmarks;
+
+import domain.Person;
+import org.openjdk.jmh.annotations.*;
+import services.PersonPage;
+import services.PersonService;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares fetching page {@code pageNumber} with PersonService keyset pagination against the same page fetched
+ * with an OFFSET query. The keyset page tokens are obtained during setup by walking the pages from the first one.
+ * <p>
+ * H2 keeps row counts in its B-tree pages, so an unfiltered OFFSET over the primary key skips rows cheaply there,
+ * unlike in MySQL. The byName variants add a filter, which forces both databases to walk the skipped rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaginationBenchmark {
+
+    @Param({"250000"})
+    public int datasetSize;
+
+    @Param({"20"})
+    public int pageSize;
+
+    @Param({"1", "100", "10000"})
+    public int pageNumber;
+
+    private EntityManagerFactory emf;
+    private EntityManager em;
+    private PersonService service;
+    private String pageToken;
+    private String byNamePageToken;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("pagination");
+        em = emf.createEntityManager();
+        service = new PersonService(em);
+        for (int first = 0; first < datasetSize; first += 100_000) {
+            service.persistAll(EmbeddedDatabase.createPeople(first, Math.min(100_000, datasetSize - first)), 50);
+        }
+        for (int page = 1; page < pageNumber; page++) {
+            pageToken = service.findPage(pageToken, pageSize).nextPageToken();
+            byNamePageToken = service.findPersonByNamePage("Person", byNamePageToken, pageSize).nextPageToken();
+            service.clear();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearContext() {
+        service.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.closeEntityManager();
+        emf.close();
+    }
+
+    @Benchmark
+    public PersonPage keyset() {
+        return service.findPage(pageToken, pageSize);
+    }
+
+    @Benchmark
+    public List<Person> offset() {
+        return em.createQuery("SELECT p FROM Person p ORDER BY p.id", Person.class)
+                .setFirstResult((pageNumber - 1) * pageSize)
+                .setMaxResults(pageSize)
+                .getResultList();
+    }
+
+    @Benchmark
+    public PersonPage keysetByName() {
+        return service.findPersonByNamePage("Person", byNamePageToken, pageSize);
+    }
+
+    @Benchmark
+    public List<Person> offsetByName() {
+        return em.createQuery("SELECT p FROM Person p WHERE p.name LIKE :name ORDER BY p.id", Person.class)
+                .setParameter("name", "%Person%")
+                .setFirstResult((pageNumber - 1) * pageSize)
+                .setMaxResults(pageSize)
+                .getResultList();
+    }
+}
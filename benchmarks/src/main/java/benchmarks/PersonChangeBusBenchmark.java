@@ -0,0 +1,55 @@
+package benchmarks;
+
+import events.ChangeType;
+import events.PersonChangeBus;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the cost a PersonChangeBus adds to a committing thread: publishing one event, with a number of
+ * subscribers consuming the events on their own threads at the same time. The events handled and lost by the
+ * subscribers are printed after each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonChangeBusBenchmark {
+
+    @Param({"0", "1", "2"})
+    public int subscribers;
+
+    private static final Map<String, Object> CHANGES = Map.of("email", "person@example.com");
+
+    private PersonChangeBus bus;
+    private final List<PersonChangeBus.Subscription> subscriptions = new ArrayList<>();
+    private final LongAdder handled = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bus = new PersonChangeBus(1 << 16);
+        for (int i = 0; i < subscribers; i++) {
+            subscriptions.add(bus.subscribe("benchmark-" + i, event -> handled.increment()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long lost = subscriptions.stream().mapToLong(PersonChangeBus.Subscription::getLostCount).sum();
+        bus.close();
+        System.out.printf("%n%,d events published, %,d handled and %,d lost by %d subscribers%n",
+                bus.publishedCount(), handled.sum(), lost, subscribers);
+    }
+
+    @Benchmark
+    public long publish() {
+        return bus.publish(ChangeType.UPDATE, 1, 1, CHANGES);
+    }
+}
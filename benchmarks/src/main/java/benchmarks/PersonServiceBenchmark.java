@@ -0,0 +1,164 @@
+package benchmarks;
+
+import domain.Person;
+import org.openjdk.jmh.annotations.*;
+import services.PersonService;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures every PersonService operation against an in-memory H2 database seeded with {@code datasetSize} rows.
+ * The persistence context is cleared before each invocation, so lookups reach the database instead of returning
+ * an already managed entity.
+ * <p>
+ * Run a single dataset size with {@code java -jar benchmarks/target/benchmarks.jar PersonServiceBenchmark -p datasetSize=1000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonServiceBenchmark {
+
+    private static final int SEED_CHUNK = 100_000;
+    private static final int BATCH_ROWS = 1_000;
+    private static final int DETACHED_PEOPLE = 1_000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int datasetSize;
+
+    @Param({"1", "50"})
+    public int batchSize;
+
+    private EntityManagerFactory emf;
+    private PersonService service;
+    private List<Person> detachedPeople;
+    private int minId;
+    private int maxId;
+    private int nextPerson;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("person_service");
+        EntityManager em = emf.createEntityManager();
+        service = new PersonService(em);
+        for (int first = 0; first < datasetSize; first += SEED_CHUNK) {
+            service.persistAll(EmbeddedDatabase.createPeople(first, Math.min(SEED_CHUNK, datasetSize - first)), batchSize);
+            service.clear();
+        }
+        Object[] range = (Object[]) em.createQuery("SELECT MIN(p.id), MAX(p.id) FROM Person p").getSingleResult();
+        minId = (Integer) range[0];
+        maxId = (Integer) range[1];
+        detachedPeople = em.createQuery("SELECT p FROM Person p ORDER BY p.id", Person.class)
+                .setMaxResults(DETACHED_PEOPLE)
+                .getResultList();
+        service.clear();
+        nextPerson = datasetSize;
+    }
+
+    @Setup(Level.Invocation)
+    public void clearContext() {
+        service.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.closeEntityManager();
+        emf.close();
+    }
+
+    /**
+     * A person persisted before each invocation, so every removal deletes an existing row.
+     */
+    @State(Scope.Benchmark)
+    public static class RemovalTarget {
+        private Integer id;
+
+        @Setup(Level.Invocation)
+        public void setUp(PersonServiceBenchmark benchmark) {
+            Person person = EmbeddedDatabase.createPeople(benchmark.nextPerson++, 1).get(0);
+            benchmark.service.persist(person);
+            id = person.getId();
+        }
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(minId, maxId + 1);
+    }
+
+    @Benchmark
+    public Person persist() {
+        Person person = EmbeddedDatabase.createPeople(nextPerson++, 1).get(0);
+        service.persist(person);
+        return person;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_ROWS)
+    public int persistAll() {
+        List<Person> people = EmbeddedDatabase.createPeople(nextPerson, BATCH_ROWS);
+        nextPerson += BATCH_ROWS;
+        return service.persistAll(people, batchSize);
+    }
+
+    @Benchmark
+    public Person merge() {
+        int index = ThreadLocalRandom.current().nextInt(detachedPeople.size());
+        Person person = detachedPeople.get(index);
+        person.setEmail("merged" + nextPerson++ + "@example.com");
+        service.merge(detachedPeople, person.getId());
+        return detachedPeople.get(index);
+    }
+
+    @Benchmark
+    public Integer remove(RemovalTarget target) {
+        service.remove(target.id);
+        return target.id;
+    }
+
+    @Benchmark
+    public Person find() {
+        return service.find(randomId());
+    }
+
+    @Benchmark
+    public Person getReference() {
+        return service.getReference(randomId());
+    }
+
+    @Benchmark
+    public List<Person> findPersonByName() {
+        return service.findPersonByName("Person " + (randomId() - minId));
+    }
+
+    @Benchmark
+    public String updatePersonDb() {
+        return service.updatePersonDb(randomId(), "email", "updated" + nextPerson++ + "@example.com");
+    }
+
+    @Benchmark
+    public List<?> createNativeQuery() {
+        return service.createNativeQuery("SELECT id, email, name FROM Person WHERE id = ?1")
+                .setParameter(1, randomId())
+                .getResultList();
+    }
+
+    @Benchmark
+    public List<?> createNativeQueryWithClass() {
+        return service.createNativeQuery("SELECT * FROM Person WHERE id = ?1", Person.class)
+                .setParameter(1, randomId())
+                .getResultList();
+    }
+
+    @Benchmark
+    public List<?> createNativeQueryWithMapping() {
+        return service.createNativeQuery("SELECT id, name, email, version FROM Person WHERE id = ?1", "PersonResult")
+                .setParameter(1, randomId())
+                .getResultList();
+    }
+}
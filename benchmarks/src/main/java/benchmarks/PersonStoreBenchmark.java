@@ -0,0 +1,68 @@
+package benchmarks;
+
+import domain.Person;
+import org.openjdk.jmh.annotations.*;
+import services.PersonService;
+import services.PersonStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares updating a person in memory through PersonService.updatePersonObj on a List, which scans the list, and on
+ * a PersonStore, which finds the person by a hash lookup. Both hold the same people, with ids 1 to datasetSize, and
+ * update the email of a random one, found by id or by name. Run with {@code -prof gc} to compare allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonStoreBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int datasetSize;
+
+    private List<Person> list;
+    private PersonStore store;
+    // The in-memory operations never touch the EntityManager
+    private final PersonService service = new PersonService(null);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        list = new ArrayList<>(datasetSize);
+        store = new PersonStore(datasetSize);
+        for (int id = 1; id <= datasetSize; id++) {
+            Person person = new Person(id, "Person " + id, "person" + id + "@example.com");
+            list.add(person);
+            store.put(person);
+        }
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(datasetSize) + 1;
+    }
+
+    @Benchmark
+    public String listById() {
+        return service.updatePersonObj(list, randomId(), null, "email", "changed@example.com");
+    }
+
+    @Benchmark
+    public String storeById() {
+        return service.updatePersonObj(store, randomId(), null, "email", "changed@example.com");
+    }
+
+    @Benchmark
+    public String listByName() {
+        return service.updatePersonObj(list, null, "person " + randomId(), "email", "changed@example.com");
+    }
+
+    @Benchmark
+    public String storeByName() {
+        return service.updatePersonObj(store, null, "person " + randomId(), "email", "changed@example.com");
+    }
+}
@@ -0,0 +1,94 @@
+package benchmarks;
+
+import domain.Person;
+import services.PersonStore;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Holds the same people either as a List of Person objects or in a PersonStore, and reports the heap each retains,
+ * the off-heap bytes of the store, the duration of a full collection with the working set live, and the collections
+ * caused by a burst of random lookups. Run each variant in its own JVM so the two do not share a heap:
+ * {@code java -Xmx8g -cp benchmarks/target/benchmarks.jar benchmarks.PersonStoreMemoryCheck list|store [people]}.
+ */
+public class PersonStoreMemoryCheck {
+
+    private static final int DEFAULT_PEOPLE = 10_000_000;
+    private static final int LOOKUPS = 10_000_000;
+
+    public static void main(String[] args) {
+        boolean useStore = args.length > 0 && args[0].equalsIgnoreCase("store");
+        int people = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PEOPLE;
+        long baseline = usedHeap();
+        long start = System.nanoTime();
+        List<Person> list = null;
+        PersonStore store = null;
+        if (useStore) {
+            store = new PersonStore(people);
+            for (int id = 1; id <= people; id++) {
+                store.put(id, "Person " + id, "person" + id + "@example.com");
+            }
+        } else {
+            list = new ArrayList<>(people);
+            for (int id = 1; id <= people; id++) {
+                list.add(new Person(id, "Person " + id, "person" + id + "@example.com"));
+            }
+        }
+        double loadSeconds = (System.nanoTime() - start) / 1e9;
+        long retained = usedHeap() - baseline;
+        System.out.printf("%s of %,d people loaded in %.1f s: %,d MB retained on the heap (%.0f bytes per person)%s%n",
+                useStore ? "PersonStore" : "List", people, loadSeconds, retained >> 20, (double) retained / people,
+                useStore ? String.format(", %,d MB off the heap", store.offHeapBytes() >> 20) : "");
+
+        start = System.nanoTime();
+        System.gc();
+        System.out.printf("Full collection with the working set live: %.0f ms%n", (System.nanoTime() - start) / 1e6);
+
+        long collections = collectionCount();
+        long collectionMillis = collectionMillis();
+        long found = 0;
+        start = System.nanoTime();
+        if (useStore) {
+            PersonStore.Cursor cursor = store.cursor();
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (cursor.find(ThreadLocalRandom.current().nextInt(people) + 1)) {
+                    found += cursor.getEmail().length();
+                }
+            }
+        } else {
+            for (int i = 0; i < LOOKUPS; i++) {
+                int id = ThreadLocalRandom.current().nextInt(people) + 1;
+                // Indexing by position is the best case for a list; the scans of the service methods are measured by
+                // PersonStoreBenchmark
+                Person person = list.get(id - 1);
+                if (person.getId() != null && person.getId() == id) {
+                    found += person.getEmail().length();
+                }
+            }
+        }
+        double lookupSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d lookups reading the email in %.2f s (%,.0f per second, checksum %d): "
+                        + "%d collections taking %,d ms%n", LOOKUPS, lookupSeconds, LOOKUPS / lookupSeconds, found,
+                collectionCount() - collections, collectionMillis() - collectionMillis);
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long collectionCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long collectionMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+}
@@ -0,0 +1,82 @@
+package benchmarks;
+
+import metrics.HibernateStatisticsMetrics;
+import org.openjdk.jmh.annotations.*;
+import services.PersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a few JPQL lookup shapes over and over, in turn, with the query plan cache at Hibernate's default size or
+ * shrunk to a single plan, so nearly every call has to parse and translate its query again. The concatenated variant
+ * puts the id into the query text instead of binding it, so every call is a new query whatever the cache size. The
+ * plan cache hit ratio of each trial is printed when it ends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryPlanCacheBenchmark {
+
+    private static final int SHAPES = 8;
+
+    @Param({"10000"})
+    public int datasetSize;
+
+    @Param({"2048", "1"})
+    public int planCacheMaxSize;
+
+    private EntityManagerFactory emf;
+    private PersonService service;
+    private HibernateStatisticsMetrics statistics;
+    private int firstId;
+    private final List<String> queries = new ArrayList<>();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("query_plan_cache", Map.of(
+                "hibernate.query.plan_cache_max_size", String.valueOf(planCacheMaxSize)));
+        service = new PersonService(emf.createEntityManager());
+        service.persistAll(EmbeddedDatabase.createPeople(0, datasetSize), 50);
+        firstId = service.findPage(null, 1).content().get(0).getId();
+        for (int i = 0; i < SHAPES; i++) {
+            queries.add("SELECT p.name FROM Person p WHERE p.id = :id AND p.version >= " + -i);
+        }
+        statistics = new HibernateStatisticsMetrics(emf);
+        statistics.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nplan cache hits=%d, misses=%d, hit ratio=%.4f%n", statistics.getQueryPlanCacheHitCount(),
+                statistics.getQueryPlanCacheMissCount(), statistics.getQueryPlanCacheHitRatio());
+        service.closeEntityManager();
+        emf.close();
+    }
+
+    private int randomId() {
+        return firstId + ThreadLocalRandom.current().nextInt(datasetSize);
+    }
+
+    @Benchmark
+    public List<String> parameterized() {
+        next = (next + 1) % SHAPES;
+        return service.createQuery(queries.get(next), String.class)
+                .setParameter("id", randomId())
+                .getResultList();
+    }
+
+    @Benchmark
+    public List<String> concatenated() {
+        return service.createQuery("SELECT p.name FROM Person p WHERE p.id = " + randomId(), String.class)
+                .getResultList();
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import domain.Person;
+import domain.PersonView;
+import org.openjdk.jmh.annotations.*;
+import services.PersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading people as managed entities with findPersonByName against reading them as PersonView records with
+ * findPersonViewsByName. Both search for "Person 1", which matches about a ninth of the rows. The caches are evicted
+ * and the persistence context is cleared before every invocation, so both variants read every row from the database.
+ * Run with {@code -prof gc} to compare the allocation per call; dividing by {@link #matches} gives the allocation
+ * per row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadOnlyBenchmark {
+
+    private static final String NAME = "Person 1";
+
+    @Param({"100000"})
+    public int datasetSize;
+
+    public int matches;
+
+    private EntityManagerFactory emf;
+    private PersonService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("read_only");
+        service = new PersonService(emf.createEntityManager());
+        service.persistAll(EmbeddedDatabase.createPeople(0, datasetSize), 50);
+        matches = service.findPersonViewsByName(NAME).size();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearContext() {
+        service.clear();
+        emf.getCache().evictAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.closeEntityManager();
+        emf.close();
+    }
+
+    @Benchmark
+    public List<Person> managedEntities() {
+        return service.findPersonByName(NAME);
+    }
+
+    @Benchmark
+    public List<PersonView> views() {
+        return service.findPersonViewsByName(NAME);
+    }
+}
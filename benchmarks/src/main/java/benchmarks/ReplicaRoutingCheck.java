@@ -0,0 +1,249 @@
+package benchmarks;
+
+import domain.Person;
+import metrics.PersonOperation;
+import metrics.PersonServiceMetrics;
+import services.ConcurrentPersonService;
+import services.RoutingPersonService;
+import services.RoutingPersonService.ReadYourWrites;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+
+/**
+ * Checks RoutingPersonService against two H2 databases standing in for a primary and its replica. A replicator
+ * thread copies the Person table and the heartbeat from the primary to the replica, applying each copy a fixed
+ * delay after it was taken, so the replica lags the primary like an asynchronous replica would.
+ * <p>
+ * A workload of interleaved sessions then finds random people, and now and then renames one and immediately reads
+ * it back by id and by name. This runs once per ReadYourWrites mode, printing how the reads were routed and how
+ * often a session failed to read its own write, next to how often the replica alone would have returned the old
+ * name. Finally, replication is paused until the replica lags more than the allowed maximum, and the replica is
+ * shut down, to show the reads falling back to the primary and returning to the replica.
+ * <p>
+ * Run with {@code java -cp benchmarks/target/benchmarks.jar benchmarks.ReplicaRoutingCheck [people]
+ * [replication delay ms] [seconds per phase]}.
+ */
+public class ReplicaRoutingCheck {
+
+    private static final String PRIMARY_URL = "jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1";
+    private static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1";
+    private static final int SESSIONS = 64;
+    private static final double WRITE_RATIO = 0.05;
+    private static final Duration MAX_LAG = Duration.ofSeconds(2);
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofMillis(100);
+    private static final int COPY_INTERVAL_MILLIS = 100;
+
+    public static void main(String[] args) throws Exception {
+        int people = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int delayMillis = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        // Without statistics, Hibernate does not log a summary of every short-lived session
+        EntityManagerFactory primary = EmbeddedDatabase.create("primary", Map.of(
+                "hibernate.generate_statistics", "false"));
+        EntityManagerFactory replica = EmbeddedDatabase.create("replica", Map.of(
+                "hibernate.generate_statistics", "false",
+                "hibernate.cache.use_second_level_cache", "false",
+                "hibernate.cache.use_query_cache", "false"));
+        new ConcurrentPersonService(primary).persistAll(EmbeddedDatabase.createPeople(0, people), 50);
+        List<Integer> ids = new ConcurrentPersonService(primary).inUnitOfWork(service -> service
+                .createQuery("SELECT p.id FROM Person p", Integer.class).getResultList());
+
+        Replicator replicator = new Replicator(delayMillis);
+        replicator.start();
+        try {
+            for (ReadYourWrites mode : ReadYourWrites.values()) {
+                try (RoutingPersonService router = new RoutingPersonService(primary, replica, mode, MAX_LAG,
+                        HEARTBEAT_INTERVAL)) {
+                    PersonServiceMetrics primaryMetrics = new PersonServiceMetrics();
+                    PersonServiceMetrics replicaMetrics = new PersonServiceMetrics();
+                    router.setMetrics(primaryMetrics, replicaMetrics);
+                    awaitReplica(router);
+                    runWorkload(router, replica, ids, mode.name(), seconds);
+                    System.out.printf("%s: find calls %,d on the primary, %,d on the replica%n", mode,
+                            primaryMetrics.get(PersonOperation.FIND).getCallCount(),
+                            replicaMetrics.get(PersonOperation.FIND).getCallCount());
+                }
+            }
+            try (RoutingPersonService router = new RoutingPersonService(primary, replica, ReadYourWrites.SESSION,
+                    MAX_LAG, HEARTBEAT_INTERVAL)) {
+                awaitReplica(router);
+                replicator.paused = true;
+                Thread.sleep(MAX_LAG.toMillis() + 500);
+                runWorkload(router, replica, ids, "Replication paused", 1);
+                replicator.paused = false;
+                awaitReplica(router);
+                runWorkload(router, replica, ids, "Replication resumed", 1);
+                replica.close();
+                runWorkload(router, null, ids, "Replica closed", 1);
+            }
+        } finally {
+            replicator.interrupt();
+            replicator.join();
+            if (replica.isOpen()) {
+                replica.close();
+            }
+            primary.close();
+        }
+    }
+
+    private static void awaitReplica(RoutingPersonService router) throws InterruptedException {
+        while (router.getReplicaLagMillis() > MAX_LAG.toMillis() / 2 || !router.isReplicaAvailable()) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Runs the workload for the given time and prints how its reads were routed. The replica factory is used to
+     * count the renames the replica alone would have missed, and may be null once the replica is gone.
+     */
+    private static void runWorkload(RoutingPersonService router, EntityManagerFactory replica, List<Integer> ids,
+                                    String label, int seconds) {
+        SplittableRandom random = new SplittableRandom(42);
+        List<RoutingPersonService.Session> sessions = new ArrayList<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            sessions.add(router.openSession());
+        }
+        ConcurrentPersonService replicaOnly = replica != null ? new ConcurrentPersonService(replica) : null;
+        long replicaReads = router.getReplicaReadCount();
+        long stickyReads = router.getStickyReadCount();
+        long staleReads = router.getStaleReadCount();
+        long fallbackReads = router.getFallbackReadCount();
+        long reads = 0;
+        long writes = 0;
+        long missedById = 0;
+        long missedByName = 0;
+        long replicaOnlyMissed = 0;
+        long end = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        while (System.nanoTime() < end) {
+            RoutingPersonService.Session session = sessions.get(random.nextInt(SESSIONS));
+            Integer id = ids.get(random.nextInt(ids.size()));
+            if (random.nextDouble() >= WRITE_RATIO) {
+                session.find(id);
+                reads++;
+                continue;
+            }
+            String name = "Renamed-" + System.nanoTime() + "-";
+            session.updatePersonDb(id, "name", name);
+            writes++;
+            Person person = session.find(id);
+            if (person == null || !name.equals(person.getName())) {
+                missedById++;
+            }
+            if (session.findPersonByName(name).stream().noneMatch(found -> found.getId().equals(id))) {
+                missedByName++;
+            }
+            if (replicaOnly != null) {
+                Person onReplica = replicaOnly.find(id);
+                if (onReplica == null || !name.equals(onReplica.getName())) {
+                    replicaOnlyMissed++;
+                }
+            }
+            reads += 2;
+        }
+        System.out.printf("%s: %,d reads and %,d renames; routed %,d to the replica, %,d sticky, %,d stale, "
+                        + "%,d fallback; own renames missed by id %,d, by name %,d; the replica alone missed %,d; "
+                        + "replica lag %,d ms%n", label, reads, writes,
+                router.getReplicaReadCount() - replicaReads, router.getStickyReadCount() - stickyReads,
+                router.getStaleReadCount() - staleReads, router.getFallbackReadCount() - fallbackReads,
+                missedById, missedByName, replicaOnlyMissed,
+                Math.min(router.getReplicaLagMillis(), 999_999));
+    }
+
+    /**
+     * Copies the heartbeat and the Person table from the primary to the replica. Each copy is applied delayMillis
+     * after it was taken, in the order taken. The heartbeat is read before the people, so a copy never claims to
+     * hold a commit it does not.
+     */
+    private static final class Replicator extends Thread {
+        private final int delayMillis;
+        private final Queue<Snapshot> snapshots = new ArrayDeque<>();
+        private volatile boolean paused;
+
+        private Replicator(int delayMillis) {
+            super("replicator");
+            this.delayMillis = delayMillis;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try (Connection primary = DriverManager.getConnection(PRIMARY_URL, "sa", "");
+                 Connection replica = DriverManager.getConnection(REPLICA_URL, "sa", "")) {
+                replica.setAutoCommit(false);
+                while (!isInterrupted()) {
+                    if (!paused) {
+                        snapshots.add(take(primary));
+                    }
+                    long now = System.currentTimeMillis();
+                    while (!snapshots.isEmpty() && snapshots.peek().takenAt() + delayMillis <= now) {
+                        apply(replica, snapshots.poll());
+                    }
+                    Thread.sleep(COPY_INTERVAL_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                // The check is over
+            } catch (SQLException e) {
+                System.err.println("Replication failed: " + e.getMessage());
+            }
+        }
+
+        private Snapshot take(Connection primary) throws SQLException {
+            long takenAt = System.currentTimeMillis();
+            try (Statement statement = primary.createStatement()) {
+                Long beatAt = null;
+                try (ResultSet rows = statement.executeQuery("SELECT beat_at FROM replication_heartbeat")) {
+                    if (rows.next()) {
+                        beatAt = rows.getLong(1);
+                    }
+                }
+                List<Object[]> people = new ArrayList<>();
+                try (ResultSet rows = statement.executeQuery("SELECT id, name, email, version FROM person")) {
+                    while (rows.next()) {
+                        people.add(new Object[]{rows.getInt(1), rows.getString(2), rows.getString(3),
+                                rows.getInt(4)});
+                    }
+                }
+                return new Snapshot(takenAt, beatAt, people);
+            }
+        }
+
+        private void apply(Connection replica, Snapshot snapshot) throws SQLException {
+            try (Statement statement = replica.createStatement();
+                 PreparedStatement insert = replica.prepareStatement(
+                         "INSERT INTO person (id, name, email, version) VALUES (?, ?, ?, ?)")) {
+                statement.executeUpdate("DELETE FROM person");
+                for (Object[] person : snapshot.people()) {
+                    for (int i = 0; i < person.length; i++) {
+                        insert.setObject(i + 1, person[i]);
+                    }
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                if (snapshot.beatAt() != null) {
+                    statement.executeUpdate("MERGE INTO replication_heartbeat (id, beat_at) KEY (id) VALUES (1, "
+                            + snapshot.beatAt() + ")");
+                }
+                replica.commit();
+            } catch (SQLException e) {
+                replica.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private record Snapshot(long takenAt, Long beatAt, List<Object[]> people) {
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import domain.Person;
+import services.ConcurrentPersonService;
+import services.PersonService;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Streams every Person row through PersonService.streamAll under a small heap, to show that memory use does not
+ * depend on the number of rows. The rows are stored in an H2 file database, so the database itself does not hold
+ * them on the heap.
+ * <p>
+ * Run with {@code java -Xmx64m -cp benchmarks/target/benchmarks.jar benchmarks.StreamingMemoryCheck [rows]}.
+ */
+public class StreamingMemoryCheck {
+
+    private static final int DEFAULT_ROWS = 1_000_000;
+    private static final int SEED_CHUNK = 10_000;
+    private static final int FETCH_SIZE = 1_000;
+    private static final int REPORT_EVERY = 100_000;
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        Path directory = Files.createTempDirectory("streaming-memory-check");
+        EntityManagerFactory emf = EmbeddedDatabase.create("streaming", Map.of(
+                "javax.persistence.jdbc.url", "jdbc:h2:file:" + directory.resolve("people")));
+        try {
+            ConcurrentPersonService seeder = new ConcurrentPersonService(emf);
+            for (int first = 0; first < rows; first += SEED_CHUNK) {
+                seeder.persistAll(EmbeddedDatabase.createPeople(first, Math.min(SEED_CHUNK, rows - first)), 50);
+            }
+            System.out.printf("Seeded %,d rows, max heap %,d MB%n", rows, Runtime.getRuntime().maxMemory() >> 20);
+
+            PersonService service = new PersonService(emf.createEntityManager());
+            long count = 0;
+            long peakUsed = 0;
+            long start = System.nanoTime();
+            try (Stream<Person> people = service.streamAll(FETCH_SIZE)) {
+                for (Person ignored : (Iterable<Person>) people::iterator) {
+                    if (++count % REPORT_EVERY == 0) {
+                        long used = usedHeap();
+                        peakUsed = Math.max(peakUsed, used);
+                        System.out.printf("Streamed %,d rows, heap used %,d MB%n", count, used >> 20);
+                    }
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Streamed %,d rows in %.1f s (%,.0f rows/s), peak heap used %,d MB%n",
+                    count, seconds, count / seconds, peakUsed >> 20);
+            service.closeEntityManager();
+        } finally {
+            emf.close();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
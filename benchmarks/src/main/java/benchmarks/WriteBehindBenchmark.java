@@ -0,0 +1,99 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import services.ConcurrentPersonService;
+import services.WriteBehindPersonService;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures sustained writes per second. Each invocation issues {@code writes} persists or name updates, either
+ * synchronously through ConcurrentPersonService, one transaction per write, or through WriteBehindPersonService,
+ * waiting with flush until the last of them is committed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBehindBenchmark {
+
+    private static final int WRITES = 1000;
+
+    @Param({"10000"})
+    public int datasetSize;
+
+    @Param({"50"})
+    public int batchSize;
+
+    private EntityManagerFactory emf;
+    private ConcurrentPersonService synchronous;
+    private WriteBehindPersonService writeBehind;
+    private int minId;
+    private int maxId;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = EmbeddedDatabase.create("write_behind");
+        synchronous = new ConcurrentPersonService(emf);
+        synchronous.persistAll(EmbeddedDatabase.createPeople(0, datasetSize), 50);
+        EntityManager em = emf.createEntityManager();
+        Object[] range = (Object[]) em.createQuery("SELECT MIN(p.id), MAX(p.id) FROM Person p").getSingleResult();
+        minId = (Integer) range[0];
+        maxId = (Integer) range[1];
+        em.close();
+        writeBehind = new WriteBehindPersonService(emf, 10_000, batchSize, Duration.ofMillis(5));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writeBehind.close();
+        emf.close();
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(minId, maxId + 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WRITES)
+    public void synchronousPersist() {
+        for (var person : EmbeddedDatabase.createPeople(datasetSize + counter, WRITES)) {
+            synchronous.persist(person);
+        }
+        counter += WRITES;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WRITES)
+    public void writeBehindPersist() throws InterruptedException {
+        for (var person : EmbeddedDatabase.createPeople(datasetSize + counter, WRITES)) {
+            writeBehind.persist(person, null);
+        }
+        counter += WRITES;
+        writeBehind.flush();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WRITES)
+    public void synchronousUpdate() {
+        for (int i = 0; i < WRITES; i++) {
+            synchronous.updatePersonDb(randomId(), "name", "Renamed " + i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WRITES)
+    public void writeBehindUpdate() throws InterruptedException {
+        for (int i = 0; i < WRITES; i++) {
+            writeBehind.update(randomId(), "name", "Renamed " + i, null);
+        }
+        writeBehind.flush();
+    }
+}
@@ -0,0 +1,44 @@
+package application;
+
+import exporter.ExportFormat;
+import exporter.ExportReport;
+import exporter.PersonExporter;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Exports the people in the database of the example-jpa persistence unit to gzip-compressed CSV or NDJSON files.
+ */
+public class ExportPeople {
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: ExportPeople <directory> [csv|ndjson]");
+            return;
+        }
+        ExportFormat format;
+        try {
+            format = args.length > 1 ? ExportFormat.valueOf(args[1].toUpperCase()) : ExportFormat.CSV;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown format " + args[1] + ", expected csv or ndjson");
+            return;
+        }
+        // Keep the existing schema and rows instead of recreating them like the interactive program does
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory("example-jpa",
+                Map.of("hibernate.hbm2ddl.auto", "update"));
+        try {
+            ExportReport report = new PersonExporter(emf).export(Path.of(args[0]), format);
+            if (!report.isComplete()) {
+                System.err.println(report.failedShards() + " shards failed; run the export again to retry them");
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to export to " + args[0] + ": " + e.getMessage());
+        } finally {
+            emf.close();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package application;
+
+import importer.ImportReport;
+import importer.PersonImporter;
+import services.ConcurrentPersonService;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Imports people from CSV or NDJSON files into the database of the example-jpa persistence unit.
+ */
+public class ImportPeople {
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: ImportPeople <file.csv|file.ndjson>...");
+            return;
+        }
+        // Keep the existing schema and rows instead of recreating them like the interactive program does
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory("example-jpa",
+                Map.of("hibernate.hbm2ddl.auto", "update"));
+        try {
+            PersonImporter importer = new PersonImporter(new ConcurrentPersonService(emf));
+            for (String file : args) {
+                try {
+                    ImportReport report = importer.importFile(Path.of(file));
+                    if (report.rejected() > 0) {
+                        System.out.println("Rejected lines were written to " + file + ".rejected");
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    System.err.println("Failed to import " + file + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            emf.close();
+        }
+    }
+}
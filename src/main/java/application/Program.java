@@ -1,6 +1,7 @@
 package application;
 
 import domain.Person;
+import metrics.PersonServiceMetrics;
 import org.hibernate.exception.GenericJDBCException;
 import org.hibernate.hql.internal.ast.QuerySyntaxException;
 import services.PersonService;
@@ -9,12 +10,18 @@ import util.PersonMessages;
 import javax.persistence.*;
 import java.util.Arrays;
 import java.util.InputMismatchException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 
 public class Program {
 
+    private static final int BATCH_SIZE = 50;
+    private static final int FETCH_SIZE = 500;
+    private static final int MAX_MANAGED_ENTITIES = 10_000;
+
     public static void main(String[] args) {
 
         List<Person> people = createPeople();
@@ -22,6 +29,11 @@ public class Program {
         EntityManagerFactory emf = Persistence.createEntityManagerFactory("example-jpa");
         EntityManager em = emf.createEntityManager();
         PersonService personService = new PersonService(em);
+        PersonServiceMetrics metrics = new PersonServiceMetrics();
+        metrics.bindHibernateStatistics(emf);
+        metrics.registerMBeans("program");
+        personService.setMetrics(metrics);
+        personService.setMaxManagedEntities(MAX_MANAGED_ENTITIES);
 
         System.out.println("Welcome to our learning system! This is a program dedicated to exploring and understanding the Java Persistence API (JPA). It provides a variety of methods, each with a clear and concise explanation of its function. This resource is useful for anyone wishing to deepen their knowledge in JPA, whether you are a beginner or someone with prior experience. Let's get started.");
 
@@ -61,9 +73,11 @@ public class Program {
                         System.out.print("Do you want to persist all persons? (Y/N) ");
                         if (scanner.next().equalsIgnoreCase("Y")) {
                             System.out.println();
-                            for (Person p : people) {
-                                personService.persist(p);
-                                System.out.println("Person " + p.getName() + " persisted with auto-generated ID " + p.getId() + ".");
+                            int persisted = personService.persistAll(people, BATCH_SIZE);
+                            if (persisted == people.size()) {
+                                for (Person p : people) {
+                                    System.out.println("Person " + p.getName() + " persisted with auto-generated ID " + p.getId() + ".");
+                                }
                             }
                         } else {
                             System.out.print("Enter the first name of the person you want to persist: ");
@@ -294,9 +308,8 @@ public class Program {
                         try {
                             Query query = personService.createQuery(jpqlQuery);
                             if (query != null) {
-                                List<?> resultList = query.getResultList();
-                                for (Object obj : resultList) {
-                                    System.out.println(obj);
+                                try (Stream<?> results = personService.stream(query, FETCH_SIZE)) {
+                                    results.forEach(System.out::println);
                                 }
                             }
                         } catch (QuerySyntaxException e) {
@@ -315,14 +328,14 @@ public class Program {
                         scanner.nextLine();
                         System.out.print("Please enter the name of the Person you want to find: ");
                         String name = scanner.nextLine();
-                        List<Person> foundPersons = personService.findPersonByName(name);
-                        if (foundPersons != null && !foundPersons.isEmpty()) {
-                            System.out.println("Found persons: ");
-                            for (Person person : foundPersons) {
-                                System.out.println(person);
+                        try (Stream<Person> foundPersons = personService.streamPersonByName(name, FETCH_SIZE)) {
+                            Iterator<Person> iterator = foundPersons.iterator();
+                            if (iterator.hasNext()) {
+                                System.out.println("Found persons: ");
+                                iterator.forEachRemaining(System.out::println);
+                            } else {
+                                System.out.println("No person found with name " + name + ".");
                             }
-                        } else {
-                            System.out.println("No person found with name " + name + ".");
                         }
                     } else if (choice.equalsIgnoreCase("D")) {
                         System.out.println(PersonMessages.CREATE_NAMED_QUERY_MSG);
@@ -340,14 +353,15 @@ public class Program {
                         try {
                             Query query = personService.createNativeQuery(sqlQuery);
                             if (query != null) {
-                                List<?> resultList = query.getResultList();
-                                for (Object result : resultList) {
-                                    if (result instanceof Object[] resultArray) {
-                                        Integer id = (Integer) resultArray[0];
-                                        String name = (String) resultArray[2];
-                                        String email = (String) resultArray[1];
-                                        System.out.println("Id: " + id + ", Name: " + name + ", Email: " + email);
-                                    }
+                                try (Stream<?> results = personService.stream(query, FETCH_SIZE)) {
+                                    results.forEach(result -> {
+                                        if (result instanceof Object[] resultArray) {
+                                            Integer id = (Integer) resultArray[0];
+                                            String name = (String) resultArray[2];
+                                            String email = (String) resultArray[1];
+                                            System.out.println("Id: " + id + ", Name: " + name + ", Email: " + email);
+                                        }
+                                    });
                                 }
                             }
                         } catch (GenericJDBCException e) {
@@ -373,9 +387,8 @@ public class Program {
                         try {
                             Query query = personService.createNativeQuery(sqlQuery, Class.forName(resultClass));
                             if (query != null) {
-                                List<?> resultList = query.getResultList();
-                                for (Object obj : resultList) {
-                                    System.out.println(obj);
+                                try (Stream<?> results = personService.stream(query, FETCH_SIZE)) {
+                                    results.forEach(System.out::println);
                                 }
                             }
                         } catch (Exception e) {
@@ -400,9 +413,8 @@ public class Program {
                         try {
                             Query query = personService.createNativeQuery(sqlQuery, resultSetMapping);
                             if (query != null) {
-                                List<?> resultList = query.getResultList();
-                                for (Object obj : resultList) {
-                                    System.out.println(obj);
+                                try (Stream<?> results = personService.stream(query, FETCH_SIZE)) {
+                                    results.forEach(System.out::println);
                                 }
                             }
                         } catch (Exception e) {
@@ -608,6 +620,8 @@ public class Program {
             }
         } while (option != 26);
 
+        System.out.println("\nOperation metrics of this session:");
+        System.out.print(metrics);
         scanner.close();
     }
 
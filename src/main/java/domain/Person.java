@@ -11,19 +11,53 @@ import java.io.Serializable;
                 fields = {
                         @FieldResult(name = "id", column = "id"),
                         @FieldResult(name = "name", column = "name"),
-                        @FieldResult(name = "email", column = "email")
+                        @FieldResult(name = "email", column = "email"),
+                        @FieldResult(name = "version", column = "version")
+                }
+        )
+)
+@SqlResultSetMapping(
+        name = "PersonViewResult",
+        classes = @ConstructorResult(
+                targetClass = PersonView.class,
+                columns = {
+                        @ColumnResult(name = "id", type = Integer.class),
+                        @ColumnResult(name = "name"),
+                        @ColumnResult(name = "email")
                 }
         )
 )
 
 @Entity
-@NamedQuery(name = "findPersonByName", query = "SELECT p FROM Person p WHERE p.name LIKE :name")
+@Table(indexes = {
+        @Index(name = "idx_person_name", columnList = "name"),
+        @Index(name = "idx_person_email", columnList = "email")
+})
+@Cacheable
+@NamedQuery(name = "findPersonByName", query = "SELECT p FROM Person p WHERE p.name LIKE :name",
+        hints = @QueryHint(name = "org.hibernate.cacheable", value = "true"))
+@NamedQuery(name = "findPersonByNamePrefix", query = "SELECT p FROM Person p WHERE p.name LIKE :prefix ESCAPE '!'",
+        hints = @QueryHint(name = "org.hibernate.cacheable", value = "true"))
+@NamedQuery(name = "findPersonViewById",
+        query = "SELECT new domain.PersonView(p.id, p.name, p.email) FROM Person p WHERE p.id = :id")
+@NamedQuery(name = "findPersonViewsByName",
+        query = "SELECT new domain.PersonView(p.id, p.name, p.email) FROM Person p WHERE p.name LIKE :name")
+@NamedQuery(name = "findPersonViewsInRange",
+        query = "SELECT new domain.PersonView(p.id, p.name, p.email) FROM Person p "
+                + "WHERE p.id BETWEEN :fromId AND :toId ORDER BY p.id")
+@NamedQuery(name = "findPeopleByIds", query = "SELECT p FROM Person p WHERE p.id IN :ids")
+@NamedQuery(name = "removePeopleByIds", query = "DELETE FROM Person p WHERE p.id IN :ids")
+@NamedQuery(name = "findAllPeople", query = "SELECT p FROM Person p ORDER BY p.id")
+@NamedQuery(name = "findPeopleAfter", query = "SELECT p FROM Person p WHERE p.id > :lastId ORDER BY p.id")
+@NamedQuery(name = "findPersonByNameAfter",
+        query = "SELECT p FROM Person p WHERE p.name LIKE :name AND p.id > :lastId ORDER BY p.id")
 public class Person implements Serializable {
 
     @Serial
     private static final long serialVersionUID = 1L;
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "person_seq")
+    @SequenceGenerator(name = "person_seq", sequenceName = "person_seq", allocationSize = 50)
     private Integer id;
     private String name;
     private String email;
@@ -56,10 +90,18 @@ public class Person implements Serializable {
         this.name = name;
     }
 
+    public String getEmail() {
+        return email;
+    }
+
     public void setEmail(String email) {
         this.email = email;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
     @Override
     public String toString() {
         return "Id: " + id + ", Name: " + name + ", Email: " + email;
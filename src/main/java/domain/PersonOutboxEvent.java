@@ -0,0 +1,69 @@
+package domain;
+
+import events.ChangeType;
+
+import javax.persistence.*;
+
+/**
+ * A committed Person change waiting in the outbox table to be delivered by an OutboxRelay. Rows are written by
+ * PersonOutbox in the transaction of the change they describe, and deleted once delivered.
+ */
+@Entity
+@Table(name = "person_outbox")
+@NamedNativeQuery(name = "claimPersonOutboxEvents",
+        query = "SELECT * FROM person_outbox ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED",
+        resultClass = PersonOutboxEvent.class)
+@NamedQuery(name = "deletePersonOutboxEvents", query = "DELETE FROM PersonOutboxEvent e WHERE e.id IN :ids")
+@NamedQuery(name = "countPersonOutboxEvents", query = "SELECT COUNT(e) FROM PersonOutboxEvent e")
+public class PersonOutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "person_id", nullable = false)
+    private Integer personId;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false, length = 6)
+    private ChangeType changeType;
+    @Column(nullable = false)
+    private int version;
+    // The new values of the changed fields as a JSON object
+    @Column(nullable = false, length = 4000)
+    private String changes;
+    // Epoch milliseconds at which the change was flushed
+    @Column(name = "created_at", nullable = false)
+    private long createdAt;
+
+    public PersonOutboxEvent() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Integer getPersonId() {
+        return personId;
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getChanges() {
+        return changes;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "Id: " + id + ", Person: " + personId + ", Type: " + changeType + ", Version: " + version
+                + ", Changes: " + changes;
+    }
+}
@@ -0,0 +1,13 @@
+package domain;
+
+/**
+ * An immutable, read-only view of a Person, filled directly from a JPQL constructor expression. Unlike an entity, a
+ * view is never managed by a persistence context, so loading one takes no snapshot for dirty checking and it can be
+ * dropped as soon as it is no longer used.
+ *
+ * @param id    the primary key of the person
+ * @param name  the name of the person
+ * @param email the email of the person
+ */
+public record PersonView(Integer id, String name, String email) {
+}
@@ -0,0 +1,40 @@
+package domain;
+
+import javax.persistence.*;
+
+/**
+ * The single row a RoutingPersonService rewrites on the primary database at a fixed interval. Replication copies it
+ * to the replica like any other row, so the time stored in the replica's copy tells how far the replica has caught
+ * up: every transaction the primary committed before that time has been applied.
+ */
+@Entity
+@Table(name = "replication_heartbeat")
+public class ReplicationHeartbeat {
+
+    @Id
+    private Integer id;
+    // Epoch milliseconds at which the row was written on the primary
+    @Column(name = "beat_at", nullable = false)
+    private long beatAt;
+
+    public ReplicationHeartbeat() {
+    }
+
+    public ReplicationHeartbeat(Integer id, long beatAt) {
+        this.id = id;
+        this.beatAt = beatAt;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public long getBeatAt() {
+        return beatAt;
+    }
+
+    @Override
+    public String toString() {
+        return "Id: " + id + ", Beat at: " + beatAt;
+    }
+}
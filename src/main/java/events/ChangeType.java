@@ -0,0 +1,10 @@
+package events;
+
+/**
+ * The kinds of committed changes a PersonChangeEvent describes.
+ */
+public enum ChangeType {
+    INSERT,
+    UPDATE,
+    DELETE
+}
@@ -0,0 +1,57 @@
+package events;
+
+import domain.PersonOutboxEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * An OutboxSink appending each event as an NDJSON line to a file. A batch is forced to the storage device before
+ * deliver returns, so no delivered event is lost if the machine crashes after the relay removed it from the outbox.
+ */
+public class FileOutboxSink implements OutboxSink, AutoCloseable {
+    private final FileChannel channel;
+
+    /**
+     * Opens the file for appending, creating it if it does not exist.
+     *
+     * @param file the file to append to
+     * @throws IOException if the file cannot be opened
+     */
+    public FileOutboxSink(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void deliver(List<PersonOutboxEvent> events) throws IOException {
+        StringBuilder lines = new StringBuilder(events.size() * 128);
+        for (PersonOutboxEvent event : events) {
+            lines.append("{\"eventId\":").append(event.getId())
+                    .append(",\"personId\":").append(event.getPersonId())
+                    .append(",\"type\":\"").append(event.getChangeType())
+                    .append("\",\"version\":").append(event.getVersion())
+                    .append(",\"changes\":").append(event.getChanges())
+                    .append(",\"createdAt\":").append(event.getCreatedAt())
+                    .append("}\n");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        // Appends from concurrent relay threads must not interleave
+        synchronized (channel) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,232 @@
+package events;
+
+import domain.PersonOutboxEvent;
+import metrics.PersonOperation;
+import metrics.PersonServiceMetrics;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains the person_outbox table into an OutboxSink. Each relay thread repeatedly claims the oldest batch of rows
+ * with {@code SELECT ... FOR UPDATE SKIP LOCKED}, delivers it to the sink and deletes it in the same transaction.
+ * Rows locked by one thread are skipped by the others, so any number of threads, in this relay or in relays of other
+ * processes sharing the database, drain the outbox in parallel without delivering a row twice. A batch the sink
+ * fails to deliver is rolled back and claimed again; a relay that dies between delivering and committing leaves the
+ * batch to be delivered again, so delivery is at least once.
+ * <p>
+ * With more than one thread, events are delivered in outbox order within a batch but not across batches, so the
+ * changes of one person may arrive out of order; consumers can compare versions to discard stale events.
+ * <p>
+ * Every batch is recorded as an OUTBOX_RELAY operation in the attached metrics. The relay also tracks its
+ * throughput and its lag, the age of the oldest event of the last delivered batch.
+ */
+public class OutboxRelay implements AutoCloseable {
+    private final EntityManagerFactory entityManagerFactory;
+    private final OutboxSink sink;
+    private final int batchSize;
+    private final long pollIntervalNanos;
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile long lagMillis;
+    private final AtomicLong maxLagMillis = new AtomicLong();
+    private volatile boolean running = true;
+    private volatile PersonServiceMetrics metrics = PersonServiceMetrics.DISABLED;
+
+    /**
+     * Creates the relay and starts its threads.
+     *
+     * @param entityManagerFactory the factory of the EntityManagers the outbox is drained with
+     * @param sink                 the destination of the events
+     * @param threads              the number of relay threads, each with its own connection
+     * @param batchSize            the maximum number of events claimed and delivered in one transaction
+     * @param pollInterval         how long a thread waits after finding the outbox empty
+     */
+    public OutboxRelay(EntityManagerFactory entityManagerFactory, OutboxSink sink, int threads, int batchSize,
+                       Duration pollInterval) {
+        if (threads < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Threads and batch size must be greater than zero.");
+        }
+        this.entityManagerFactory = entityManagerFactory;
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.pollIntervalNanos = pollInterval.toNanos();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::relayLoop, "person-outbox-relay-" + i);
+            thread.setDaemon(true);
+            this.threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Attaches the metrics the relay records its batches in.
+     *
+     * @param metrics the metrics to record in, or null to stop recording
+     */
+    public void setMetrics(PersonServiceMetrics metrics) {
+        this.metrics = metrics != null ? metrics : PersonServiceMetrics.DISABLED;
+    }
+
+    private void relayLoop() {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            while (running) {
+                int count;
+                try {
+                    count = relayBatch(entityManager);
+                } catch (Exception e) {
+                    failedBatches.incrementAndGet();
+                    System.err.println("Failed to relay outbox events: " + e.getMessage());
+                    count = 0;
+                }
+                if (count == 0) {
+                    LockSupport.parkNanos(pollIntervalNanos);
+                }
+            }
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Claims, delivers and deletes one batch in a single transaction.
+     *
+     * @return the number of events delivered
+     */
+    private int relayBatch(EntityManager entityManager) throws Exception {
+        long start = metrics.start();
+        try {
+            entityManager.getTransaction().begin();
+            List<PersonOutboxEvent> events = entityManager
+                    .createNamedQuery("claimPersonOutboxEvents", PersonOutboxEvent.class)
+                    .setParameter("limit", batchSize)
+                    .getResultList();
+            if (events.isEmpty()) {
+                entityManager.getTransaction().commit();
+                return 0;
+            }
+            sink.deliver(events);
+            List<Long> ids = new ArrayList<>(events.size());
+            long oldest = Long.MAX_VALUE;
+            for (PersonOutboxEvent event : events) {
+                ids.add(event.getId());
+                oldest = Math.min(oldest, event.getCreatedAt());
+            }
+            entityManager.createNamedQuery("deletePersonOutboxEvents").setParameter("ids", ids).executeUpdate();
+            entityManager.getTransaction().commit();
+            long lag = System.currentTimeMillis() - oldest;
+            lagMillis = lag;
+            maxLagMillis.accumulateAndGet(lag, Math::max);
+            delivered.addAndGet(events.size());
+            batches.incrementAndGet();
+            metrics.success(PersonOperation.OUTBOX_RELAY, start, events.size());
+            return events.size();
+        } catch (Exception e) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            metrics.failure(PersonOperation.OUTBOX_RELAY, start, e);
+            throw e;
+        } finally {
+            entityManager.clear();
+        }
+    }
+
+    /**
+     * Counts the events waiting in the outbox, including those claimed by relay threads but not yet committed.
+     *
+     * @return the number of undelivered events
+     */
+    public long countPending() {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return entityManager.createNamedQuery("countPersonOutboxEvents", Long.class).getSingleResult();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Returns the number of events this relay delivered.
+     *
+     * @return the number of delivered events
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Returns the number of batches this relay delivered.
+     *
+     * @return the number of delivered batches
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * Returns the number of batches that failed and were left in the outbox to be claimed again.
+     *
+     * @return the number of failed batches
+     */
+    public long getFailedBatchCount() {
+        return failedBatches.get();
+    }
+
+    /**
+     * Returns the throughput since the relay started.
+     *
+     * @return the number of events delivered per second
+     */
+    public double getEventsPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? delivered.get() / seconds : 0;
+    }
+
+    /**
+     * Returns how long the oldest event of the last delivered batch waited in the outbox.
+     *
+     * @return the current lag in milliseconds
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * Returns the largest lag seen since the relay started.
+     *
+     * @return the maximum lag in milliseconds
+     */
+    public long getMaxLagMillis() {
+        return maxLagMillis.get();
+    }
+
+    /**
+     * Stops the relay threads after their current batch and waits for them. Undelivered events stay in the outbox.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Thread thread : threads) {
+            LockSupport.unpark(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package events;
+
+import domain.PersonOutboxEvent;
+
+import java.util.List;
+
+/**
+ * The destination an OutboxRelay delivers outbox events to, such as a message broker, a search index or a file.
+ */
+@FunctionalInterface
+public interface OutboxSink {
+
+    /**
+     * Delivers a batch of events in outbox order. The events are removed from the outbox only if this returns
+     * normally; if it throws, the batch is delivered again later. A relay that crashes after delivering a batch but
+     * before removing it also delivers the batch again, so sinks should ignore events whose id they have seen.
+     * Relay threads call this concurrently.
+     *
+     * @param events the events to deliver
+     * @throws Exception if the events could not be delivered
+     */
+    void deliver(List<PersonOutboxEvent> events) throws Exception;
+}
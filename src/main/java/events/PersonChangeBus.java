@@ -0,0 +1,253 @@
+package events;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * An in-process change-data-capture stream of committed Person changes. Attached to an EntityManagerFactory, it
+ * receives an event for every Person inserted, updated or deleted through the persistence context, once the
+ * transaction has committed. Bulk statements such as PersonService.updateWhere and removeAll bypass the persistence
+ * context and publish nothing.
+ * <p>
+ * Events are kept in a lock-free ring buffer. A publisher claims a sequence with one atomic increment and stores the
+ * event in its slot; it never waits for subscribers, so a slow subscriber cannot hold back a commit. Each subscriber
+ * has its own cursor and thread and reads the slots in sequence order, waiting for a slot that has not been
+ * published yet. A subscriber that falls more than the capacity of the ring behind is lapped: it skips to the oldest
+ * event still in the ring and counts the skipped events as lost, so it can resynchronize from the database.
+ */
+public class PersonChangeBus implements AutoCloseable {
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+
+    private final AtomicReferenceArray<PersonChangeEvent> entries;
+    private final int mask;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a bus holding the last 65,536 events.
+     */
+    public PersonChangeBus() {
+        this(1 << 16);
+    }
+
+    /**
+     * Creates a bus.
+     *
+     * @param capacity the number of events the ring holds, a power of two; a subscriber can fall this many events
+     *                 behind before it loses events
+     */
+    public PersonChangeBus(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two greater than one.");
+        }
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Registers this bus with Hibernate, so that it publishes the committed Person changes of every EntityManager
+     * of the factory. Attach a bus once per factory.
+     *
+     * @param entityManagerFactory the factory to capture the changes of
+     */
+    public void attach(EntityManagerFactory entityManagerFactory) {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        PersonChangeListener listener = new PersonChangeListener(this);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+    }
+
+    /**
+     * Publishes an event without waiting for any subscriber.
+     *
+     * @param type    the kind of change
+     * @param id      the id of the person
+     * @param version the version of the person after the change
+     * @param changes the new values of the changed fields by field name
+     * @return the sequence of the event
+     */
+    public long publish(ChangeType type, Integer id, int version, Map<String, Object> changes) {
+        long sequence = nextSequence.getAndIncrement();
+        PersonChangeEvent event = new PersonChangeEvent(sequence, type, id, version, changes);
+        int slot = (int) sequence & mask;
+        // A publisher delayed between claiming and storing must not overwrite a newer event that lapped it
+        for (PersonChangeEvent current = entries.getAcquire(slot);
+             current == null || current.sequence() < sequence;
+             current = entries.getAcquire(slot)) {
+            // Volatile, so the store cannot be reordered after the read of a subscriber's waiting flag below
+            if (entries.weakCompareAndSetVolatile(slot, current, event)) {
+                break;
+            }
+        }
+        for (Subscription subscription : subscriptions) {
+            if (subscription.waiting) {
+                LockSupport.unpark(subscription.thread);
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * Returns the number of events published so far.
+     *
+     * @return the number of published events
+     */
+    public long publishedCount() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Subscribes to the events published from now on. The handler runs on a thread of the subscription's own, one
+     * event at a time in sequence order; an exception it throws is reported and the next event is handled.
+     *
+     * @param name    the name of the subscriber, used for its thread
+     * @param handler the handler of the events
+     * @return the subscription, to be closed when the events are no longer needed
+     */
+    public Subscription subscribe(String name, Consumer<PersonChangeEvent> handler) {
+        Subscription subscription = new Subscription(name, handler, nextSequence.get());
+        subscriptions.add(subscription);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    /**
+     * Closes every subscription, after each has handled the events published before this call.
+     */
+    @Override
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    /**
+     * A subscriber's cursor into the bus and the thread that moves it.
+     */
+    public final class Subscription implements AutoCloseable {
+        private final String name;
+        private final Consumer<PersonChangeEvent> handler;
+        private final Thread thread;
+        private volatile long cursor;
+        private volatile long lost;
+        private volatile long errors;
+        private volatile long stopAt = Long.MAX_VALUE;
+        // Set while the thread is parked without a timeout, so that publish knows to unpark it
+        private volatile boolean waiting;
+
+        private Subscription(String name, Consumer<PersonChangeEvent> handler, long cursor) {
+            this.name = name;
+            this.handler = handler;
+            this.cursor = cursor;
+            this.thread = new Thread(this::run, "person-change-" + name);
+            thread.setDaemon(true);
+        }
+
+        private void run() {
+            long next = cursor;
+            int idle = 0;
+            while (next < stopAt) {
+                PersonChangeEvent event = entries.getAcquire((int) next & mask);
+                if (event != null && event.sequence() == next) {
+                    try {
+                        handler.accept(event);
+                    } catch (RuntimeException e) {
+                        errors++;
+                        System.err.println("Subscriber " + name + " failed to handle event " + next + ": "
+                                + e.getMessage());
+                    }
+                    cursor = ++next;
+                    idle = 0;
+                } else if (event != null && event.sequence() > next) {
+                    // Lapped: every event up to one ring behind the one in the slot has been overwritten
+                    long oldest = event.sequence() - mask;
+                    lost += oldest - next;
+                    cursor = next = oldest;
+                } else if (idle < SPINS) {
+                    idle++;
+                    Thread.onSpinWait();
+                } else if (idle < SPINS + YIELDS) {
+                    idle++;
+                    Thread.yield();
+                } else {
+                    waiting = true;
+                    // Checked again after raising the flag, so an event published just before cannot be missed
+                    if (entries.get((int) next & mask) == event && next < stopAt) {
+                        LockSupport.park(this);
+                    }
+                    waiting = false;
+                }
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the sequence of the next event this subscriber will handle.
+         *
+         * @return the cursor of the subscriber
+         */
+        public long getCursor() {
+            return cursor;
+        }
+
+        /**
+         * Returns the number of published events this subscriber has not handled yet.
+         *
+         * @return the lag of the subscriber
+         */
+        public long getLag() {
+            return Math.max(0, nextSequence.get() - cursor);
+        }
+
+        /**
+         * Returns the number of events this subscriber skipped because it was lapped.
+         *
+         * @return the number of lost events
+         */
+        public long getLostCount() {
+            return lost;
+        }
+
+        /**
+         * Returns the number of events whose handler threw an exception.
+         *
+         * @return the number of failed events
+         */
+        public long getErrorCount() {
+            return errors;
+        }
+
+        /**
+         * Stops the subscription once it has handled the events published before this call, and waits for it.
+         */
+        @Override
+        public void close() {
+            stopAt = Math.min(stopAt, nextSequence.get());
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            subscriptions.remove(this);
+        }
+    }
+}
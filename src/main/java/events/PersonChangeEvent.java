@@ -0,0 +1,17 @@
+package events;
+
+import java.util.Map;
+
+/**
+ * A committed change of one Person, as published on a PersonChangeBus. Events are immutable, so subscribers may keep
+ * them after handling them.
+ *
+ * @param sequence the position of the event on the bus, increasing by one per published event
+ * @param type     whether the person was inserted, updated or deleted
+ * @param id       the id of the person
+ * @param version  the version of the person after the change, or the last version for a deletion
+ * @param changes  the new values of the changed fields by field name, every field for an insertion and none for a
+ *                 deletion; values may be null
+ */
+public record PersonChangeEvent(long sequence, ChangeType type, Integer id, int version, Map<String, Object> changes) {
+}
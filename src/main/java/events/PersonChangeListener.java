@@ -0,0 +1,114 @@
+package events;
+
+import domain.Person;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Turns the post-commit entity events Hibernate raises for Person into PersonChangeEvents. Hibernate calls these
+ * listeners on the committing thread once the transaction has committed, and never for a rolled back one.
+ */
+final class PersonChangeListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+    private static final long serialVersionUID = 1L;
+
+    private final transient PersonChangeBus bus;
+
+    PersonChangeListener(PersonChangeBus bus) {
+        this.bus = bus;
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return persister.getMappedClass() == Person.class;
+    }
+
+    // Still abstract in Hibernate 5.6, which only calls requiresPostCommitHandling
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Person) {
+            Object[] state = event.getState();
+            bus.publish(ChangeType.INSERT, (Integer) event.getId(), version(event.getPersister(), state),
+                    changes(event.getPersister(), state, null, null));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Person) {
+            Object[] state = event.getState();
+            bus.publish(ChangeType.UPDATE, (Integer) event.getId(), version(event.getPersister(), state),
+                    changes(event.getPersister(), state, event.getOldState(), event.getDirtyProperties()));
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Person) {
+            bus.publish(ChangeType.DELETE, (Integer) event.getId(),
+                    version(event.getPersister(), event.getDeletedState()), Map.of());
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+        // Nothing was committed, so there is no change to publish
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        // Nothing was committed, so there is no change to publish
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        // Nothing was committed, so there is no change to publish
+    }
+
+    static int version(EntityPersister persister, Object[] state) {
+        Object version = state != null && persister.isVersioned() ? state[persister.getVersionProperty()] : null;
+        return version instanceof Integer value ? value : 0;
+    }
+
+    /**
+     * Collects the new values of the dirty properties, of the properties that differ from the old state when
+     * Hibernate did not determine the dirty ones, or of every property for an insertion. The version is left out.
+     */
+    static Map<String, Object> changes(EntityPersister persister, Object[] state, Object[] oldState,
+                                       int[] dirtyProperties) {
+        String[] names = persister.getPropertyNames();
+        int versionProperty = persister.isVersioned() ? persister.getVersionProperty() : -1;
+        Map<String, Object> changes = new LinkedHashMap<>();
+        if (dirtyProperties != null) {
+            for (int property : dirtyProperties) {
+                if (property != versionProperty) {
+                    changes.put(names[property], state[property]);
+                }
+            }
+        } else {
+            for (int property = 0; property < names.length; property++) {
+                if (property != versionProperty
+                        && (oldState == null || !Objects.equals(oldState[property], state[property]))) {
+                    changes.put(names[property], state[property]);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(changes);
+    }
+}
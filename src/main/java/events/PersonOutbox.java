@@ -0,0 +1,36 @@
+package events;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * A transactional outbox for Person changes. Once attached to an EntityManagerFactory, every Person inserted,
+ * updated or deleted through the persistence context, for example by PersonService.persist, updatePersonDb or
+ * remove, adds a row to the person_outbox table in the same transaction, so the row is committed if and only if the
+ * change is. An OutboxRelay delivers the rows afterwards, and they survive a crash in between. Bulk statements such
+ * as PersonService.updateWhere and removeAll bypass the persistence context and write no rows.
+ */
+public final class PersonOutbox {
+
+    private PersonOutbox() {
+    }
+
+    /**
+     * Registers the outbox with Hibernate, so that the Person changes of every EntityManager of the factory are
+     * written to the outbox table. The persistence unit must list domain.PersonOutboxEvent. Attach the outbox once
+     * per factory.
+     *
+     * @param entityManagerFactory the factory to record the changes of
+     */
+    public static void attach(EntityManagerFactory entityManagerFactory) {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        PersonOutboxListener listener = new PersonOutboxListener();
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+    }
+}
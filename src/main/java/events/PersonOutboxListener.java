@@ -0,0 +1,152 @@
+package events;
+
+import domain.Person;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes an outbox row for every Person change Hibernate flushes. The rows of a session are collected while it
+ * flushes and inserted with one JDBC batch on the session's own connection, whenever BATCH_SIZE rows are pending and
+ * just before the transaction commits, so they commit or roll back together with the changes.
+ */
+final class PersonOutboxListener implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener {
+    private static final long serialVersionUID = 1L;
+    private static final int BATCH_SIZE = 500;
+    private static final String INSERT = "INSERT INTO person_outbox (person_id, change_type, version, changes, "
+            + "created_at) VALUES (?, ?, ?, ?, ?)";
+
+    private final transient Map<SessionImplementor, List<Row>> pending = new ConcurrentHashMap<>();
+
+    private record Row(Integer personId, ChangeType type, int version, String changes, long createdAt) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    // Still abstract in Hibernate 5.6, which only calls requiresPostCommitHandling
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Person) {
+            Object[] state = event.getState();
+            add(event.getSession(), new Row((Integer) event.getId(), ChangeType.INSERT,
+                    PersonChangeListener.version(event.getPersister(), state),
+                    toJson(PersonChangeListener.changes(event.getPersister(), state, null, null)),
+                    System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Person) {
+            Object[] state = event.getState();
+            add(event.getSession(), new Row((Integer) event.getId(), ChangeType.UPDATE,
+                    PersonChangeListener.version(event.getPersister(), state),
+                    toJson(PersonChangeListener.changes(event.getPersister(), state, event.getOldState(),
+                            event.getDirtyProperties())),
+                    System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Person) {
+            add(event.getSession(), new Row((Integer) event.getId(), ChangeType.DELETE,
+                    PersonChangeListener.version(event.getPersister(), event.getDeletedState()), "{}",
+                    System.currentTimeMillis()));
+        }
+    }
+
+    private void add(EventSource session, Row row) {
+        List<Row> rows = pending.get(session);
+        if (rows == null) {
+            rows = new ArrayList<>();
+            pending.put(session, rows);
+            // Runs after the last flush of the transaction; a rollback discards the rows instead
+            session.getActionQueue().registerProcess(this::write);
+            session.getActionQueue().registerProcess((success, completed) -> pending.remove(session));
+        }
+        rows.add(row);
+        if (rows.size() >= BATCH_SIZE) {
+            write(session);
+        }
+    }
+
+    private void write(SessionImplementor session) {
+        List<Row> rows = pending.get(session);
+        if (rows == null || rows.isEmpty()) {
+            return;
+        }
+        session.doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                for (Row row : rows) {
+                    insert.setInt(1, row.personId());
+                    insert.setString(2, row.type().name());
+                    insert.setInt(3, row.version());
+                    insert.setString(4, row.changes());
+                    insert.setLong(5, row.createdAt());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        });
+        rows.clear();
+    }
+
+    /**
+     * Writes the changes as a JSON object of strings, numbers, booleans and nulls.
+     */
+    static String toJson(Map<String, Object> changes) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            appendString(json, change.getKey());
+            json.append(':');
+            Object value = change.getValue();
+            if (value == null || value instanceof Number || value instanceof Boolean) {
+                json.append(value);
+            } else {
+                appendString(json, value.toString());
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
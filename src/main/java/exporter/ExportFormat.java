@@ -0,0 +1,31 @@
+package exporter;
+
+/**
+ * The file formats PersonExporter writes, one person per line, compressed with gzip.
+ */
+public enum ExportFormat {
+    /**
+     * Comma-separated id, name and email after an {@code id,name,email} header line. Fields containing commas,
+     * quotes or line breaks are enclosed in double quotes, with embedded quotes doubled.
+     */
+    CSV("csv.gz"),
+    /**
+     * One JSON object per line with "id", "name" and "email" members.
+     */
+    NDJSON("ndjson.gz");
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Returns the file extension of this format, without the leading dot.
+     *
+     * @return the extension, for example "ndjson.gz"
+     */
+    public String extension() {
+        return extension;
+    }
+}
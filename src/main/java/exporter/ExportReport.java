@@ -0,0 +1,41 @@
+package exporter;
+
+import java.time.Duration;
+
+/**
+ * The outcome of a PersonExporter run.
+ *
+ * @param rows          the number of people written by this run
+ * @param bytes         the number of compressed bytes written by this run
+ * @param shards        the total number of shards of the export
+ * @param skippedShards the number of shards already completed by an earlier run
+ * @param failedShards  the number of shards that failed and have to be exported again
+ * @param elapsed       the time the run took
+ */
+public record ExportReport(long rows, long bytes, int shards, int skippedShards, int failedShards, Duration elapsed) {
+
+    /**
+     * Returns the export throughput.
+     *
+     * @return the number of people written per second
+     */
+    public double rowsPerSecond() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return seconds > 0 ? rows / seconds : 0;
+    }
+
+    /**
+     * Checks if every shard of the export has been written.
+     *
+     * @return true if no shard failed
+     */
+    public boolean isComplete() {
+        return failedShards == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("rows=%,d, bytes=%,d, shards=%d (skipped %d, failed %d) in %.1f s (%,.0f rows/s)",
+                rows, bytes, shards, skippedShards, failedShards, elapsed.toNanos() / 1e9, rowsPerSecond());
+    }
+}
@@ -0,0 +1,122 @@
+package exporter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a gzip file through a FileChannel. Callers encode their data straight into a large direct input buffer,
+ * which is compressed into a direct output buffer and written to the channel only when full, so the data is never
+ * copied onto the heap and the file is written in large blocks. An instance is not thread-safe.
+ */
+final class GzipFileWriter implements Closeable {
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final byte[] NO_INPUT = new byte[0];
+
+    private final FileChannel channel;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer input;
+    private final ByteBuffer output;
+    private long bytesWritten;
+    private boolean closed;
+
+    GzipFileWriter(Path file, int bufferSize, int compressionLevel) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.deflater = new Deflater(compressionLevel, true);
+        this.input = ByteBuffer.allocateDirect(bufferSize);
+        this.output = ByteBuffer.allocateDirect(bufferSize);
+        output.put(HEADER);
+    }
+
+    /**
+     * Returns the input buffer with room for at least the given number of bytes, compressing its current content
+     * first if necessary.
+     *
+     * @param bytes the number of bytes the caller is about to put
+     * @return the input buffer to put the bytes into
+     * @throws IOException if the compressed data cannot be written
+     */
+    ByteBuffer reserve(int bytes) throws IOException {
+        if (input.remaining() < bytes) {
+            compressInput();
+            if (input.remaining() < bytes) {
+                throw new IllegalArgumentException("A record of up to " + bytes + " bytes does not fit the "
+                        + input.capacity() + " byte buffer.");
+            }
+        }
+        return input;
+    }
+
+    /**
+     * Returns the number of compressed bytes written to the file so far.
+     *
+     * @return the file size written so far
+     */
+    long bytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Compresses the remaining input, writes the gzip trailer and closes the file. Does nothing if already closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            compressInput();
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) crc.getValue()).putInt((int) deflater.getBytesRead()).flip();
+            if (output.remaining() < trailer.remaining()) {
+                drain();
+            }
+            output.put(trailer);
+            drain();
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    private void compressInput() throws IOException {
+        input.flip();
+        crc.update(input);
+        input.rewind();
+        deflater.setInput(input);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+        // The deflater keeps reading from the buffer it was given, which is about to be reused
+        deflater.setInput(NO_INPUT);
+        input.clear();
+    }
+
+    private void deflate() throws IOException {
+        deflater.deflate(output);
+        if (!output.hasRemaining()) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            bytesWritten += channel.write(output);
+        }
+        output.clear();
+    }
+}
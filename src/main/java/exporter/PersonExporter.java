@@ -0,0 +1,235 @@
+package exporter;
+
+import domain.PersonView;
+import metrics.PersonOperation;
+import metrics.PersonServiceMetrics;
+import services.PersonService;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Exports the Person table to gzip-compressed CSV or NDJSON files, one file per shard. The id range is split into
+ * shards that are exported in parallel, each on its own thread and EntityManager, by streaming PersonView rows
+ * through PersonService.streamViews and encoding them straight into the direct buffers of a GzipFileWriter. Because
+ * the rows are views, nothing is hydrated into or kept by a persistence context, and the work left per row is
+ * encoding and compression, which scales with the number of threads.
+ * <p>
+ * Exports are resumable per shard. The shard ranges are written to a manifest in the output directory on the first
+ * run, and each shard is written to a temporary file that is renamed once complete. Running the export again into
+ * the same directory skips the completed shards and only exports the missing or failed ones.
+ */
+public class PersonExporter {
+    private static final String MANIFEST = "manifest.txt";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final int parallelism;
+    private final int shards;
+    private final int fetchSize;
+    private final int bufferSize;
+    private final int compressionLevel;
+    private final Duration progressInterval;
+
+    /**
+     * Creates an exporter with one thread per processor, four shards per thread, 1 MB buffers, the fastest
+     * compression level and progress reported every 5 seconds.
+     *
+     * @param entityManagerFactory the factory of the EntityManagers the shards are read with
+     */
+    public PersonExporter(EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory, Runtime.getRuntime().availableProcessors(),
+                Runtime.getRuntime().availableProcessors() * 4, 1000, 1 << 20, 1, Duration.ofSeconds(5));
+    }
+
+    /**
+     * Creates an exporter.
+     *
+     * @param entityManagerFactory the factory of the EntityManagers the shards are read with
+     * @param parallelism          the number of shards exported at the same time; should not exceed the connection
+     *                             pool size
+     * @param shards               the number of shards the id range is split into on the first run
+     * @param fetchSize            the number of rows the JDBC driver fetches per round trip
+     * @param bufferSize           the size of each direct buffer, at least the size of the largest row
+     * @param compressionLevel     the gzip compression level, from 0 (none) to 9 (best)
+     * @param progressInterval     how often progress is printed
+     */
+    public PersonExporter(EntityManagerFactory entityManagerFactory, int parallelism, int shards, int fetchSize,
+                          int bufferSize, int compressionLevel, Duration progressInterval) {
+        if (parallelism < 1 || shards < 1 || fetchSize < 1 || bufferSize < 1) {
+            throw new IllegalArgumentException("Parallelism, shards, fetch size and buffer size must be greater "
+                    + "than zero.");
+        }
+        this.entityManagerFactory = entityManagerFactory;
+        this.parallelism = parallelism;
+        this.shards = shards;
+        this.fetchSize = fetchSize;
+        this.bufferSize = bufferSize;
+        this.compressionLevel = compressionLevel;
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Exports every person into the given directory, skipping the shards an earlier run already completed.
+     *
+     * @param directory the output directory, created if it does not exist
+     * @param format    the file format
+     * @return the number of rows and bytes written and the number of skipped and failed shards
+     * @throws IOException if the directory or the manifest cannot be written
+     */
+    public ExportReport export(Path directory, ExportFormat format) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        List<int[]> ranges = shardRanges(directory.resolve(MANIFEST));
+        AtomicLong read = new AtomicLong();
+        AtomicLong rows = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        int skipped = 0;
+        int failed = 0;
+        Thread progress = Thread.ofVirtual().start(() -> reportProgress(read, start));
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int shard = 0; shard < ranges.size(); shard++) {
+                Path file = directory.resolve(String.format("person-%05d.%s", shard, format.extension()));
+                if (Files.exists(file)) {
+                    skipped++;
+                    continue;
+                }
+                int[] range = ranges.get(shard);
+                tasks.add(executor.submit(() -> {
+                    exportShard(range[0], range[1], file, format, read, rows, bytes);
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    System.err.println("Failed to export shard: " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while exporting to " + directory + ".", e);
+        } finally {
+            executor.shutdownNow();
+            progress.interrupt();
+        }
+        ExportReport report = new ExportReport(rows.get(), bytes.get(), ranges.size(), skipped, failed,
+                Duration.ofNanos(System.nanoTime() - start));
+        System.out.println("Export to " + directory + " finished: " + report);
+        return report;
+    }
+
+    private void exportShard(int fromId, int toId, Path file, ExportFormat format, AtomicLong read,
+                             AtomicLong rows, AtomicLong bytes) throws IOException {
+        Path partial = file.resolveSibling(file.getFileName() + ".tmp");
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        PersonService service = new PersonService(entityManager);
+        // streamViews reports a query that cannot be executed as an empty stream, which must not pass for an empty
+        // shard; the error still shows up in the metrics
+        PersonServiceMetrics metrics = new PersonServiceMetrics();
+        service.setMetrics(metrics);
+        GzipFileWriter writer;
+        long count = 0;
+        try {
+            writer = new GzipFileWriter(partial, bufferSize, compressionLevel);
+            try (writer; Stream<PersonView> people = service.streamViews(fromId, toId, fetchSize)) {
+                byte[] header = RowEncoder.header(format);
+                writer.reserve(header.length).put(header);
+                for (PersonView person : (Iterable<PersonView>) people::iterator) {
+                    ByteBuffer buffer = writer.reserve(RowEncoder.maxBytes(person));
+                    RowEncoder.encode(format, person, buffer);
+                    if (++count % fetchSize == 0) {
+                        read.addAndGet(fetchSize);
+                    }
+                }
+                read.addAndGet(count % fetchSize);
+                if (metrics.get(PersonOperation.STREAM).getErrorCount() > 0) {
+                    throw new IOException("Failed to read people " + fromId + " to " + toId + ".");
+                }
+            }
+        } finally {
+            entityManager.close();
+        }
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // Only completed shards count towards the report, while progress also counted the rows of failed ones
+        rows.addAndGet(count);
+        bytes.addAndGet(writer.bytesWritten());
+    }
+
+    /**
+     * Reads the shard ranges from the manifest, or splits the current id range into equal shards and writes them to
+     * a new manifest. A manifest is only written when there are rows to export, so an export of an empty table
+     * does not fix the shards of later exports into the same directory.
+     */
+    private List<int[]> shardRanges(Path manifest) throws IOException {
+        List<int[]> ranges = new ArrayList<>();
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                String[] bounds = line.trim().split("\\s+");
+                if (bounds.length == 2) {
+                    ranges.add(new int[]{Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1])});
+                }
+            }
+            if (!ranges.isEmpty()) {
+                return ranges;
+            }
+        }
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        Object[] bounds;
+        try {
+            bounds = (Object[]) entityManager.createQuery("SELECT MIN(p.id), MAX(p.id) FROM Person p")
+                    .getSingleResult();
+        } finally {
+            entityManager.close();
+        }
+        if (bounds[0] != null) {
+            long min = (Integer) bounds[0];
+            long max = (Integer) bounds[1];
+            long width = Math.max(1, (max - min + shards) / shards);
+            for (long from = min; from <= max; from += width) {
+                ranges.add(new int[]{(int) from, (int) Math.min(from + width - 1, max)});
+            }
+        }
+        if (ranges.isEmpty()) {
+            return ranges;
+        }
+        List<String> lines = new ArrayList<>(ranges.size());
+        for (int[] range : ranges) {
+            lines.add(range[0] + " " + range[1]);
+        }
+        Path partial = manifest.resolveSibling(MANIFEST + ".tmp");
+        Files.write(partial, lines, StandardCharsets.UTF_8);
+        Files.move(partial, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return ranges;
+    }
+
+    private void reportProgress(AtomicLong rows, long start) {
+        try {
+            while (true) {
+                Thread.sleep(progressInterval);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("Exported %,d people (%,.0f rows/s)%n", rows.get(), rows.get() / seconds);
+            }
+        } catch (InterruptedException e) {
+            // The export finished
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package exporter;
+
+import domain.PersonView;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes people as UTF-8 CSV or NDJSON lines straight into a byte buffer, escaping as it goes, without creating
+ * intermediate strings or byte arrays.
+ */
+final class RowEncoder {
+    private static final byte[] CSV_HEADER = "id,name,email\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private RowEncoder() {
+    }
+
+    /**
+     * Returns the first line of a file in the given format.
+     *
+     * @param format the file format
+     * @return the header line, or an empty array if the format has none
+     */
+    static byte[] header(ExportFormat format) {
+        return format == ExportFormat.CSV ? CSV_HEADER : new byte[0];
+    }
+
+    /**
+     * Returns an upper bound of the encoded size of a person, for reserving buffer space before encoding it.
+     *
+     * @param person the person to encode
+     * @return the maximum number of bytes encode can put
+     */
+    static int maxBytes(PersonView person) {
+        // Escaping turns one char into at most six bytes (\u001f); UTF-8 needs at most three per char
+        return 48 + 6 * (length(person.name()) + length(person.email()));
+    }
+
+    /**
+     * Puts one line for a person into the buffer.
+     *
+     * @param format the file format
+     * @param person the person to encode
+     * @param buffer the buffer, with at least maxBytes(person) bytes remaining
+     */
+    static void encode(ExportFormat format, PersonView person, ByteBuffer buffer) {
+        if (format == ExportFormat.CSV) {
+            putInt(buffer, person.id());
+            buffer.put((byte) ',');
+            putCsv(buffer, person.name());
+            buffer.put((byte) ',');
+            putCsv(buffer, person.email());
+        } else {
+            putAscii(buffer, "{\"id\":");
+            putInt(buffer, person.id());
+            putAscii(buffer, ",\"name\":");
+            putJson(buffer, person.name());
+            putAscii(buffer, ",\"email\":");
+            putJson(buffer, person.email());
+            buffer.put((byte) '}');
+        }
+        buffer.put((byte) '\n');
+    }
+
+    private static void putInt(ByteBuffer buffer, Integer value) {
+        if (value == null) {
+            return;
+        }
+        putAscii(buffer, Integer.toString(value));
+    }
+
+    private static void putAscii(ByteBuffer buffer, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private static void putCsv(ByteBuffer buffer, String text) {
+        if (text == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            putUtf8(buffer, text, false);
+            return;
+        }
+        buffer.put((byte) '"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                buffer.put((byte) '"').put((byte) '"');
+            } else {
+                i = putChar(buffer, text, i, false);
+            }
+        }
+        buffer.put((byte) '"');
+    }
+
+    private static void putJson(ByteBuffer buffer, String text) {
+        if (text == null) {
+            putAscii(buffer, "null");
+            return;
+        }
+        buffer.put((byte) '"');
+        putUtf8(buffer, text, true);
+        buffer.put((byte) '"');
+    }
+
+    private static void putUtf8(ByteBuffer buffer, String text, boolean jsonEscape) {
+        for (int i = 0; i < text.length(); i++) {
+            i = putChar(buffer, text, i, jsonEscape);
+        }
+    }
+
+    /**
+     * Puts the character at the given index, or the surrogate pair starting there, and returns the index of the last
+     * char consumed.
+     */
+    private static int putChar(ByteBuffer buffer, String text, int i, boolean jsonEscape) {
+        char c = text.charAt(i);
+        if (c < 0x80) {
+            if (jsonEscape && (c == '"' || c == '\\')) {
+                buffer.put((byte) '\\').put((byte) c);
+            } else if (jsonEscape && c < 0x20) {
+                buffer.put((byte) '\\').put((byte) 'u').put((byte) '0').put((byte) '0')
+                        .put(HEX[c >> 4]).put(HEX[c & 0xf]);
+            } else {
+                buffer.put((byte) c);
+            }
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xc0 | c >> 6)).put((byte) (0x80 | c & 0x3f));
+        } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                && Character.isLowSurrogate(text.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, text.charAt(++i));
+            buffer.put((byte) (0xf0 | codePoint >> 18)).put((byte) (0x80 | codePoint >> 12 & 0x3f))
+                    .put((byte) (0x80 | codePoint >> 6 & 0x3f)).put((byte) (0x80 | codePoint & 0x3f));
+        } else if (Character.isSurrogate(c)) {
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xe0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3f)).put((byte) (0x80 | c & 0x3f));
+        }
+        return i;
+    }
+
+    private static int length(String text) {
+        return text != null ? text.length() : 0;
+    }
+}
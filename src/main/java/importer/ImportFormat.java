@@ -0,0 +1,36 @@
+package importer;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * The file formats PersonImporter reads, one record per line.
+ */
+public enum ImportFormat {
+    /**
+     * Comma-separated name and email, with an optional {@code name,email} header line. Fields containing commas or
+     * quotes are enclosed in double quotes, with embedded quotes doubled.
+     */
+    CSV,
+    /**
+     * One JSON object per line with string "name" and "email" members; other members are ignored.
+     */
+    NDJSON;
+
+    /**
+     * Picks the format from the file extension: .csv for CSV, .ndjson, .jsonl or .json for NDJSON.
+     *
+     * @param file the file to import
+     * @return the format of the file
+     * @throws IllegalArgumentException if the extension is not recognized
+     */
+    public static ImportFormat of(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        } else if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return NDJSON;
+        }
+        throw new IllegalArgumentException("Unknown import format of " + file + ". Use a .csv or .ndjson file.");
+    }
+}
@@ -0,0 +1,30 @@
+package importer;
+
+import java.time.Duration;
+
+/**
+ * The outcome of a PersonImporter run.
+ *
+ * @param persisted the number of people written to the database
+ * @param rejected  the number of lines that could not be parsed, written to the rejected lines file
+ * @param failed    the number of parsed people whose batch could not be persisted
+ * @param elapsed   the time the import took
+ */
+public record ImportReport(long persisted, long rejected, long failed, Duration elapsed) {
+
+    /**
+     * Returns the import throughput.
+     *
+     * @return the number of people persisted per second
+     */
+    public double rowsPerSecond() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return seconds > 0 ? persisted / seconds : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("persisted=%,d, rejected=%,d, failed=%,d in %.1f s (%,.0f rows/s)",
+                persisted, rejected, failed, elapsed.toNanos() / 1e9, rowsPerSecond());
+    }
+}
@@ -0,0 +1,334 @@
+package importer;
+
+import domain.Person;
+import services.ConcurrentPersonService;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads people from large CSV or NDJSON files. The file is split on line boundaries into chunks that are memory-mapped
+ * and parsed in parallel on a fork-join pool. Parsed people travel in batches through a bounded queue to writer
+ * threads, each persisting its batches with ConcurrentPersonService.persistAll on an EntityManager of its own. When
+ * the writers fall behind, the full queue holds the parsers back, so memory use stays bounded by the queue size and
+ * not by the file size.
+ * <p>
+ * Lines that cannot be parsed are appended to the rejected lines file together with their byte offset and the
+ * reason. Progress and throughput are printed every {@code progressInterval}.
+ */
+public class PersonImporter {
+    private static final List<Person> END_OF_INPUT = List.of();
+    private static final int BOUNDARY_SCAN_SIZE = 8192;
+
+    private final ConcurrentPersonService personService;
+    private final int parallelism;
+    private final int writerThreads;
+    private final int chunkSize;
+    private final int batchSize;
+    private final Duration progressInterval;
+
+    /**
+     * Creates an importer with one parser per processor, four writers, 8 MB chunks, batches of 50 and progress
+     * reported every 5 seconds.
+     *
+     * @param personService the service the batches are persisted with
+     */
+    public PersonImporter(ConcurrentPersonService personService) {
+        this(personService, Runtime.getRuntime().availableProcessors(), 4, 8 << 20, 50, Duration.ofSeconds(5));
+    }
+
+    /**
+     * Creates an importer.
+     *
+     * @param personService    the service the batches are persisted with
+     * @param parallelism      the number of chunks parsed at the same time
+     * @param writerThreads    the number of threads persisting batches, each with its own EntityManager; should not
+     *                         exceed the connection pool size
+     * @param chunkSize        the approximate number of bytes in a chunk
+     * @param batchSize        the number of people persisted per batch, ideally equal to hibernate.jdbc.batch_size
+     * @param progressInterval how often progress is printed
+     */
+    public PersonImporter(ConcurrentPersonService personService, int parallelism, int writerThreads, int chunkSize,
+                          int batchSize, Duration progressInterval) {
+        if (parallelism < 1 || writerThreads < 1 || chunkSize < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Parallelism, writer threads, chunk size and batch size must be "
+                    + "greater than zero.");
+        }
+        this.personService = personService;
+        this.parallelism = parallelism;
+        this.writerThreads = writerThreads;
+        this.chunkSize = chunkSize;
+        this.batchSize = batchSize;
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Imports a file, picking the format from its extension. Rejected lines go to a file next to it with the suffix
+     * {@code .rejected}.
+     *
+     * @param file the file to import
+     * @return the number of people persisted, rejected and failed
+     * @throws IOException if the file cannot be read or the rejected lines cannot be written
+     */
+    public ImportReport importFile(Path file) throws IOException {
+        return importFile(file, ImportFormat.of(file), file.resolveSibling(file.getFileName() + ".rejected"));
+    }
+
+    /**
+     * Imports a file.
+     *
+     * @param file         the file to import
+     * @param format       the format of the file
+     * @param rejectedFile the file rejected lines are written to; it is only created if a line is rejected
+     * @return the number of people persisted, rejected and failed
+     * @throws IOException if the file cannot be read or the rejected lines cannot be written
+     */
+    public ImportReport importFile(Path file, ImportFormat format, Path rejectedFile) throws IOException {
+        long start = System.nanoTime();
+        Run run = new Run(format, rejectedFile);
+        List<Thread> writers = new ArrayList<>(writerThreads);
+        for (int i = 0; i < writerThreads; i++) {
+            Thread writer = new Thread(run::write, "person-import-writer-" + i);
+            writer.start();
+            writers.add(writer);
+        }
+        Thread progress = Thread.ofVirtual().start(() -> run.reportProgress(start));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (long[] chunk : split(channel)) {
+                chunks.add(pool.submit(() -> run.parse(channel, chunk[0], chunk[1])));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing " + file + ".", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("Failed to parse " + file + ": " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+            run.finish(writers);
+            progress.interrupt();
+        }
+        ImportReport report = run.report(start);
+        System.out.println("Import of " + file + " finished: " + report);
+        return report;
+    }
+
+    /**
+     * Splits the file into chunks of about chunkSize bytes, each ending just after a line terminator or at the end of
+     * the file.
+     *
+     * @return the start and end offset of each chunk
+     */
+    private List<long[]> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer scan = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+        long chunkStart = 0;
+        while (chunkStart < size) {
+            long chunkEnd = Math.min(chunkStart + chunkSize, size);
+            while (chunkEnd < size) {
+                scan.clear();
+                int read = channel.read(scan, chunkEnd);
+                int newline = -1;
+                for (int i = 0; i < read && newline < 0; i++) {
+                    if (scan.get(i) == '\n') {
+                        newline = i;
+                    }
+                }
+                if (newline >= 0) {
+                    chunkEnd += newline + 1;
+                    break;
+                }
+                chunkEnd = Math.min(chunkEnd + Math.max(read, 1), size);
+            }
+            chunks.add(new long[]{chunkStart, chunkEnd});
+            chunkStart = chunkEnd;
+        }
+        return chunks;
+    }
+
+    /**
+     * The state shared by the stages of one import.
+     */
+    private final class Run {
+        private final ImportFormat format;
+        private final Path rejectedFile;
+        private final BlockingQueue<List<Person>> batches = new ArrayBlockingQueue<>(writerThreads * 4);
+        private final AtomicLong parsed = new AtomicLong();
+        private final AtomicLong persisted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private BufferedWriter rejectedWriter;
+
+        Run(ImportFormat format, Path rejectedFile) {
+            this.format = format;
+            this.rejectedFile = rejectedFile;
+        }
+
+        /**
+         * Parses one chunk, handing out full batches as they are filled.
+         */
+        void parse(FileChannel channel, long chunkStart, long chunkEnd) {
+            MappedByteBuffer chunk;
+            try {
+                chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            PersonLineParser parser = new PersonLineParser(format);
+            byte[] line = new byte[256];
+            List<Person> batch = new ArrayList<>(batchSize);
+            int lineStart = 0;
+            int limit = chunk.limit();
+            while (lineStart < limit) {
+                int lineEnd = lineStart;
+                while (lineEnd < limit && chunk.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int length = lineEnd - lineStart;
+                if (length > 0 && chunk.get(lineEnd - 1) == '\r') {
+                    length--;
+                }
+                line = PersonLineParser.ensureCapacity(line, length);
+                chunk.get(lineStart, line, 0, length);
+                try {
+                    Person person = parser.parse(line, length);
+                    if (person != null) {
+                        batch.add(person);
+                        parsed.incrementAndGet();
+                        if (batch.size() == batchSize) {
+                            put(batch);
+                            batch = new ArrayList<>(batchSize);
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    reject(chunkStart + lineStart, e.getMessage(), line, length);
+                }
+                lineStart = lineEnd + 1;
+            }
+            if (!batch.isEmpty()) {
+                put(batch);
+            }
+        }
+
+        private void put(List<Person> batch) {
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    @Override
+                    public boolean block() throws InterruptedException {
+                        batches.put(batch);
+                        return true;
+                    }
+
+                    @Override
+                    public boolean isReleasable() {
+                        return false;
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while queueing a batch.", e);
+            }
+        }
+
+        /**
+         * Persists batches until the end of the input. A batch that cannot be persisted at all, for example because
+         * no EntityManager can be created, is counted as failed and the writer moves on, so the queue keeps
+         * draining and neither the parsers nor finish wait forever on a writer that died.
+         */
+        void write() {
+            try {
+                for (List<Person> batch = batches.take(); batch != END_OF_INPUT; batch = batches.take()) {
+                    try {
+                        int count = personService.persistAll(batch, batchSize);
+                        persisted.addAndGet(count);
+                        failed.addAndGet(batch.size() - count);
+                    } catch (Throwable e) {
+                        failed.addAndGet(batch.size());
+                        System.err.println("Failed to persist a batch of " + batch.size() + " people: " + e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Waits for the writers to persist the remaining batches and closes the rejected lines file.
+         */
+        void finish(List<Thread> writers) throws IOException {
+            try {
+                for (int i = 0; i < writers.size(); i++) {
+                    batches.put(END_OF_INPUT);
+                }
+                for (Thread writer : writers) {
+                    writer.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writers.forEach(Thread::interrupt);
+            }
+            synchronized (this) {
+                if (rejectedWriter != null) {
+                    rejectedWriter.close();
+                }
+            }
+        }
+
+        synchronized void reject(long offset, String reason, byte[] line, int length) {
+            rejected.incrementAndGet();
+            try {
+                if (rejectedWriter == null) {
+                    rejectedWriter = Files.newBufferedWriter(rejectedFile, StandardCharsets.UTF_8);
+                }
+                rejectedWriter.write(offset + "\t" + reason + "\t");
+                rejectedWriter.write(new String(line, 0, length, StandardCharsets.UTF_8));
+                rejectedWriter.newLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void reportProgress(long start) {
+            try {
+                while (true) {
+                    Thread.sleep(progressInterval);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("Imported %,d of %,d parsed people, %,d rejected, %,d failed (%,.0f rows/s)%n",
+                            persisted.get(), parsed.get(), rejected.get(), failed.get(), persisted.get() / seconds);
+                }
+            } catch (InterruptedException e) {
+                // The import finished
+            }
+        }
+
+        ImportReport report(long start) {
+            return new ImportReport(persisted.get(), rejected.get(), failed.get(),
+                    Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package importer;
+
+import domain.Person;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses one CSV or NDJSON line, given as UTF-8 bytes, into a Person. Fields are decoded straight from the line
+ * bytes: the common case of an unquoted, unescaped field costs one String and nothing else, and the scratch buffers
+ * for quoted and escaped fields are reused from line to line. An instance is not thread-safe; each parsing task
+ * uses its own.
+ */
+final class PersonLineParser {
+    private static final byte[] NAME_KEY = "name".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EMAIL_KEY = "email".getBytes(StandardCharsets.US_ASCII);
+
+    private final ImportFormat format;
+    private byte[] scratch = new byte[256];
+    private final StringBuilder escaped = new StringBuilder();
+    // end of the last field or value read, as an index into the line
+    private int position;
+
+    PersonLineParser(ImportFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Parses a line without its line terminator.
+     *
+     * @param line   the buffer holding the line
+     * @param length the number of bytes of the line
+     * @return the parsed person, or null if the line is blank or the CSV header
+     * @throws IllegalArgumentException if the line is not a valid record
+     */
+    Person parse(byte[] line, int length) {
+        if (isBlank(line, length)) {
+            return null;
+        }
+        return format == ImportFormat.CSV ? parseCsv(line, length) : parseJson(line, length);
+    }
+
+    private Person parseCsv(byte[] line, int length) {
+        position = 0;
+        String name = csvField(line, length);
+        if (position >= length || line[position] != ',') {
+            throw new IllegalArgumentException("expected 2 fields");
+        }
+        position++;
+        String email = csvField(line, length);
+        if (position < length) {
+            throw new IllegalArgumentException("expected 2 fields");
+        }
+        if (name.equalsIgnoreCase("name") && email.equalsIgnoreCase("email")) {
+            return null;
+        }
+        return person(name, email);
+    }
+
+    private String csvField(byte[] line, int length) {
+        int start = position;
+        if (start < length && line[start] == '"') {
+            int size = 0;
+            int i = start + 1;
+            while (true) {
+                if (i >= length) {
+                    throw new IllegalArgumentException("unterminated quoted field");
+                }
+                byte b = line[i++];
+                if (b == '"') {
+                    if (i < length && line[i] == '"') {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                scratch = ensureCapacity(scratch, size + 1);
+                scratch[size++] = b;
+            }
+            position = i;
+            return new String(scratch, 0, size, StandardCharsets.UTF_8);
+        }
+        int end = start;
+        while (end < length && line[end] != ',') {
+            if (line[end] == '"') {
+                throw new IllegalArgumentException("quote inside an unquoted field");
+            }
+            end++;
+        }
+        position = end;
+        return new String(line, start, end - start, StandardCharsets.UTF_8).trim();
+    }
+
+    private Person parseJson(byte[] line, int length) {
+        position = skipWhitespace(line, 0, length);
+        expect(line, length, '{');
+        String name = null;
+        String email = null;
+        position = skipWhitespace(line, position, length);
+        if (position < length && line[position] == '}') {
+            position++;
+        } else {
+            while (true) {
+                position = skipWhitespace(line, position, length);
+                expect(line, length, '"');
+                int keyStart = position;
+                int keyEnd = skipString(line, length);
+                position = skipWhitespace(line, position, length);
+                expect(line, length, ':');
+                position = skipWhitespace(line, position, length);
+                if (matches(line, keyStart, keyEnd, NAME_KEY)) {
+                    name = jsonString(line, length);
+                } else if (matches(line, keyStart, keyEnd, EMAIL_KEY)) {
+                    email = jsonString(line, length);
+                } else {
+                    skipValue(line, length);
+                }
+                position = skipWhitespace(line, position, length);
+                if (position < length && line[position] == ',') {
+                    position++;
+                } else {
+                    expect(line, length, '}');
+                    break;
+                }
+            }
+        }
+        if (skipWhitespace(line, position, length) < length) {
+            throw new IllegalArgumentException("unexpected content after the object");
+        }
+        return person(name, email);
+    }
+
+    /**
+     * Reads a JSON string or null value at the current position.
+     */
+    private String jsonString(byte[] line, int length) {
+        if (startsWith(line, length, "null")) {
+            position += 4;
+            return null;
+        }
+        expect(line, length, '"');
+        int start = position;
+        int end = start;
+        while (end < length && line[end] != '"' && line[end] != '\\') {
+            end++;
+        }
+        if (end < length && line[end] == '"') {
+            position = end + 1;
+            return new String(line, start, end - start, StandardCharsets.UTF_8);
+        }
+        escaped.setLength(0);
+        int segment = start;
+        int i = end;
+        while (true) {
+            if (i >= length) {
+                throw new IllegalArgumentException("unterminated string");
+            }
+            byte b = line[i];
+            if (b == '"') {
+                escaped.append(new String(line, segment, i - segment, StandardCharsets.UTF_8));
+                position = i + 1;
+                return escaped.toString();
+            }
+            if (b != '\\') {
+                i++;
+                continue;
+            }
+            escaped.append(new String(line, segment, i - segment, StandardCharsets.UTF_8));
+            if (i + 1 >= length) {
+                throw new IllegalArgumentException("unterminated string");
+            }
+            byte next = line[i + 1];
+            i += 2;
+            switch (next) {
+                case '"', '\\', '/' -> escaped.append((char) next);
+                case 'b' -> escaped.append('\b');
+                case 'f' -> escaped.append('\f');
+                case 'n' -> escaped.append('\n');
+                case 'r' -> escaped.append('\r');
+                case 't' -> escaped.append('\t');
+                case 'u' -> {
+                    if (i + 4 > length) {
+                        throw new IllegalArgumentException("invalid unicode escape");
+                    }
+                    escaped.append((char) Integer.parseInt(new String(line, i, 4, StandardCharsets.US_ASCII), 16));
+                    i += 4;
+                }
+                default -> throw new IllegalArgumentException("invalid escape \\" + (char) next);
+            }
+            segment = i;
+        }
+    }
+
+    /**
+     * Skips a JSON string whose opening quote has been read, returning the end of its content.
+     */
+    private int skipString(byte[] line, int length) {
+        int i = position;
+        while (i < length && line[i] != '"') {
+            i += line[i] == '\\' ? 2 : 1;
+        }
+        if (i >= length) {
+            throw new IllegalArgumentException("unterminated string");
+        }
+        position = i + 1;
+        return i;
+    }
+
+    /**
+     * Skips any JSON value at the current position, including nested objects and arrays. A missing value, as in
+     * {@code {"x":}} or {@code {"x":,"name":"a"}}, is rejected.
+     */
+    private void skipValue(byte[] line, int length) {
+        if (position >= length || line[position] == '}' || line[position] == ']' || line[position] == ',') {
+            throw new IllegalArgumentException("missing value");
+        }
+        int depth = 0;
+        while (position < length) {
+            byte b = line[position];
+            if (b == '"') {
+                position++;
+                skipString(line, length);
+                if (depth == 0) {
+                    return;
+                }
+                continue;
+            }
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (depth == 0) {
+                    return;
+                }
+                depth--;
+            } else if (b == ',' && depth == 0) {
+                return;
+            }
+            position++;
+        }
+        if (depth > 0) {
+            throw new IllegalArgumentException("unterminated value");
+        }
+    }
+
+    private void expect(byte[] line, int length, char expected) {
+        if (position >= length || line[position] != expected) {
+            throw new IllegalArgumentException("expected '" + expected + "' at column " + (position + 1));
+        }
+        position++;
+    }
+
+    private boolean startsWith(byte[] line, int length, String literal) {
+        if (position + literal.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (line[position + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Person person(String name, String email) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("missing name");
+        }
+        return new Person(null, name, email == null || email.isEmpty() ? null : email);
+    }
+
+    private static boolean matches(byte[] line, int start, int end, byte[] key) {
+        if (end - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (line[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(byte[] line, int from, int length) {
+        while (from < length && (line[from] == ' ' || line[from] == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean isBlank(byte[] line, int length) {
+        return skipWhitespace(line, 0, length) == length;
+    }
+
+    static byte[] ensureCapacity(byte[] buffer, int capacity) {
+        if (capacity <= buffer.length) {
+            return buffer;
+        }
+        byte[] grown = new byte[Math.max(capacity, buffer.length * 2)];
+        System.arraycopy(buffer, 0, grown, 0, buffer.length);
+        return grown;
+    }
+}
@@ -0,0 +1,48 @@
+package metrics;
+
+/**
+ * The JMX view of the Hibernate session factory statistics. Counts are only collected when
+ * hibernate.generate_statistics is enabled.
+ */
+public interface HibernateStatisticsMXBean {
+
+    long getPrepareStatementCount();
+
+    long getQueryExecutionCount();
+
+    long getQueryExecutionMaxTimeMillis();
+
+    long getEntityLoadCount();
+
+    long getEntityFetchCount();
+
+    long getEntityInsertCount();
+
+    long getEntityUpdateCount();
+
+    long getEntityDeleteCount();
+
+    long getFlushCount();
+
+    long getTransactionCount();
+
+    long getOptimisticFailureCount();
+
+    long getSecondLevelCacheHitCount();
+
+    long getSecondLevelCacheMissCount();
+
+    long getSecondLevelCachePutCount();
+
+    long getQueryCacheHitCount();
+
+    long getQueryCacheMissCount();
+
+    long getQueryPlanCacheHitCount();
+
+    long getQueryPlanCacheMissCount();
+
+    double getQueryPlanCacheHitRatio();
+
+    void reset();
+}
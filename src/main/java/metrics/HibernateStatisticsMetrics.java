@@ -0,0 +1,144 @@
+package metrics;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Reads the statement, entity, flush and cache counters Hibernate keeps for a session factory.
+ */
+public class HibernateStatisticsMetrics implements HibernateStatisticsMXBean {
+    private final Statistics statistics;
+
+    public HibernateStatisticsMetrics(EntityManagerFactory entityManagerFactory) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * Returns whether Hibernate is collecting statistics, that is whether hibernate.generate_statistics is enabled.
+     *
+     * @return true if the counters are being updated
+     */
+    public boolean isEnabled() {
+        return statistics.isStatisticsEnabled();
+    }
+
+    @Override
+    public long getPrepareStatementCount() {
+        return statistics.getPrepareStatementCount();
+    }
+
+    @Override
+    public long getQueryExecutionCount() {
+        return statistics.getQueryExecutionCount();
+    }
+
+    @Override
+    public long getQueryExecutionMaxTimeMillis() {
+        return statistics.getQueryExecutionMaxTime();
+    }
+
+    @Override
+    public long getEntityLoadCount() {
+        return statistics.getEntityLoadCount();
+    }
+
+    @Override
+    public long getEntityFetchCount() {
+        return statistics.getEntityFetchCount();
+    }
+
+    @Override
+    public long getEntityInsertCount() {
+        return statistics.getEntityInsertCount();
+    }
+
+    @Override
+    public long getEntityUpdateCount() {
+        return statistics.getEntityUpdateCount();
+    }
+
+    @Override
+    public long getEntityDeleteCount() {
+        return statistics.getEntityDeleteCount();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return statistics.getFlushCount();
+    }
+
+    @Override
+    public long getTransactionCount() {
+        return statistics.getTransactionCount();
+    }
+
+    @Override
+    public long getOptimisticFailureCount() {
+        return statistics.getOptimisticFailureCount();
+    }
+
+    @Override
+    public long getSecondLevelCacheHitCount() {
+        return statistics.getSecondLevelCacheHitCount();
+    }
+
+    @Override
+    public long getSecondLevelCacheMissCount() {
+        return statistics.getSecondLevelCacheMissCount();
+    }
+
+    @Override
+    public long getSecondLevelCachePutCount() {
+        return statistics.getSecondLevelCachePutCount();
+    }
+
+    @Override
+    public long getQueryCacheHitCount() {
+        return statistics.getQueryCacheHitCount();
+    }
+
+    @Override
+    public long getQueryCacheMissCount() {
+        return statistics.getQueryCacheMissCount();
+    }
+
+    @Override
+    public long getQueryPlanCacheHitCount() {
+        return statistics.getQueryPlanCacheHitCount();
+    }
+
+    @Override
+    public long getQueryPlanCacheMissCount() {
+        return statistics.getQueryPlanCacheMissCount();
+    }
+
+    /**
+     * Returns the share of query creations that found their parsed plan in the query plan cache.
+     *
+     * @return the hit ratio between 0 and 1, or 0 if no query has been created yet
+     */
+    @Override
+    public double getQueryPlanCacheHitRatio() {
+        long hits = getQueryPlanCacheHitCount();
+        long total = hits + getQueryPlanCacheMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public void reset() {
+        statistics.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hibernate: statements=%d, queries=%d, loads=%d, fetches=%d, flushes=%d, "
+                        + "L2 hits=%d, L2 misses=%d, query cache hits=%d, query cache misses=%d, "
+                        + "plan cache hits=%d, plan cache misses=%d",
+                getPrepareStatementCount(), getQueryExecutionCount(), getEntityLoadCount(), getEntityFetchCount(),
+                getFlushCount(), getSecondLevelCacheHitCount(), getSecondLevelCacheMissCount(),
+                getQueryCacheHitCount(), getQueryCacheMissCount(),
+                getQueryPlanCacheHitCount(), getQueryPlanCacheMissCount());
+    }
+}
@@ -0,0 +1,164 @@
+package metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of one PersonService operation: a latency distribution, call and row counts, and error counts by
+ * exception type. Recording is lock-free and does not allocate, except the first time an exception type is seen.
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+    private static final long LOWEST_DISCERNIBLE_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.HOURS.toNanos(1);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final PersonOperation operation;
+    private final ConcurrentHistogram latency =
+            new ConcurrentHistogram(LOWEST_DISCERNIBLE_NANOS, HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final ConcurrentMap<Class<?>, LongAdder> errorsByType = new ConcurrentHashMap<>();
+
+    OperationMetrics(PersonOperation operation) {
+        this.operation = operation;
+    }
+
+    public PersonOperation getOperation() {
+        return operation;
+    }
+
+    void recordSuccess(long nanos, long rowCount) {
+        recordLatency(nanos);
+        calls.increment();
+        rows.add(rowCount);
+    }
+
+    void recordFailure(long nanos, Throwable error) {
+        recordLatency(nanos);
+        calls.increment();
+        errors.increment();
+        errorsByType.computeIfAbsent(error.getClass(), type -> new LongAdder()).increment();
+    }
+
+    void recordRows(long rowCount) {
+        rows.add(rowCount);
+    }
+
+    void recordConflict() {
+        conflicts.increment();
+    }
+
+    private void recordLatency(long nanos) {
+        latency.recordValue(Math.max(LOWEST_DISCERNIBLE_NANOS, Math.min(nanos, HIGHEST_TRACKABLE_NANOS)));
+    }
+
+    /**
+     * Returns a copy of the latency distribution in nanoseconds, for reporting percentiles not exposed here.
+     *
+     * @return a snapshot of the latency histogram
+     */
+    public Histogram latencySnapshot() {
+        return latency.copy();
+    }
+
+    /**
+     * Returns the latency at the given percentile.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public long latencyNanosAtPercentile(double percentile) {
+        return latency.getValueAtPercentile(percentile);
+    }
+
+    @Override
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCountByType() {
+        Map<String, Long> counts = new TreeMap<>();
+        errorsByType.forEach((type, count) -> counts.put(type.getName(), count.sum()));
+        return counts;
+    }
+
+    @Override
+    public long getRowCount() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getConflictCount() {
+        return conflicts.sum();
+    }
+
+    /**
+     * Returns the share of attempts that were retried after an optimistic locking conflict. Every call makes one
+     * attempt plus one more per retried conflict.
+     *
+     * @return the retried conflicts per attempt, between 0 and 1
+     */
+    @Override
+    public double getConflictRate() {
+        long conflictCount = conflicts.sum();
+        long attempts = calls.sum() + conflictCount;
+        return attempts == 0 ? 0 : (double) conflictCount / attempts;
+    }
+
+    @Override
+    public double getMeanLatencyMicros() {
+        return latency.getMean() / 1_000;
+    }
+
+    @Override
+    public long getP50LatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencyNanosAtPercentile(50));
+    }
+
+    @Override
+    public long getP99LatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencyNanosAtPercentile(99));
+    }
+
+    @Override
+    public long getP999LatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencyNanosAtPercentile(99.9));
+    }
+
+    @Override
+    public long getMaxLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getMaxValue());
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        calls.reset();
+        errors.reset();
+        rows.reset();
+        conflicts.reset();
+        errorsByType.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: calls=%d, errors=%d, rows=%d, conflicts=%d, p50=%dus, p99=%dus, max=%dus",
+                operation.metricName(), getCallCount(), getErrorCount(), getRowCount(), getConflictCount(),
+                getP50LatencyMicros(), getP99LatencyMicros(), getMaxLatencyMicros());
+    }
+}
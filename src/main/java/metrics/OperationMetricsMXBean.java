@@ -0,0 +1,33 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the metrics recorded for one PersonService operation. Latencies are in microseconds.
+ */
+public interface OperationMetricsMXBean {
+
+    long getCallCount();
+
+    long getErrorCount();
+
+    Map<String, Long> getErrorCountByType();
+
+    long getRowCount();
+
+    long getConflictCount();
+
+    double getConflictRate();
+
+    double getMeanLatencyMicros();
+
+    long getP50LatencyMicros();
+
+    long getP99LatencyMicros();
+
+    long getP999LatencyMicros();
+
+    long getMaxLatencyMicros();
+
+    void reset();
+}
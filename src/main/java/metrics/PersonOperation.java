@@ -0,0 +1,51 @@
+package metrics;
+
+import java.util.Locale;
+
+/**
+ * The PersonService operations that PersonServiceMetrics records.
+ */
+public enum PersonOperation {
+    PERSIST,
+    PERSIST_ALL,
+    MERGE,
+    REMOVE,
+    FIND,
+    FIND_ALL,
+    FIND_VIEW,
+    GET_REFERENCE,
+    FLUSH,
+    CLEAR,
+    DETACH,
+    LOCK,
+    LOCK_WAIT,
+    WITH_LOCK,
+    CLAIM_BATCH,
+    GROUP_COMMIT,
+    OUTBOX_RELAY,
+    REFRESH,
+    CREATE_QUERY,
+    CREATE_NATIVE_QUERY,
+    FIND_PERSON_BY_NAME,
+    FIND_PERSON_VIEWS_BY_NAME,
+    FIND_PERSON_BY_NAME_PREFIX,
+    FIND_PERSON_BY_NAME_CONTAINING,
+    FIND_PAGE,
+    STREAM,
+    REBUILD_NAME_INDEX,
+    UPDATE_PERSON_DB,
+    UPDATE_WITH_RETRY,
+    UPDATE_WHERE,
+    REMOVE_ALL;
+
+    private final String metricName = name().toLowerCase(Locale.ROOT);
+
+    /**
+     * Returns the name used for this operation in JMX object names and Micrometer tags.
+     *
+     * @return the operation name in lower case, for example "find_page"
+     */
+    public String metricName() {
+        return metricName;
+    }
+}
@@ -0,0 +1,71 @@
+package metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes PersonServiceMetrics to any Micrometer registry. The meters read the existing counters and histograms
+ * when the registry polls them, so binding adds no work to the recorded operations. Micrometer is an optional
+ * dependency: it only needs to be on the classpath when this class is used.
+ */
+public class PersonServiceMeterBinder implements MeterBinder {
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+
+    private final PersonServiceMetrics metrics;
+
+    public PersonServiceMeterBinder(PersonServiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (PersonOperation operation : PersonOperation.values()) {
+            OperationMetrics operationMetrics = metrics.get(operation);
+            if (operationMetrics == null) {
+                return;
+            }
+            Tags tags = Tags.of("operation", operation.metricName());
+            FunctionCounter.builder("person.service.calls", operationMetrics, OperationMetrics::getCallCount)
+                    .tags(tags)
+                    .register(registry);
+            FunctionCounter.builder("person.service.errors", operationMetrics, OperationMetrics::getErrorCount)
+                    .tags(tags)
+                    .register(registry);
+            FunctionCounter.builder("person.service.rows", operationMetrics, OperationMetrics::getRowCount)
+                    .tags(tags)
+                    .register(registry);
+            FunctionCounter.builder("person.service.conflicts", operationMetrics, OperationMetrics::getConflictCount)
+                    .tags(tags)
+                    .register(registry);
+            for (double percentile : PERCENTILES) {
+                TimeGauge.builder("person.service.latency", operationMetrics, TimeUnit.NANOSECONDS,
+                                m -> m.latencyNanosAtPercentile(percentile))
+                        .tags(tags.and("percentile", Double.toString(percentile / 100)))
+                        .register(registry);
+            }
+        }
+        HibernateStatisticsMetrics statistics = metrics.getHibernateStatistics();
+        if (statistics != null) {
+            hibernateCounter(registry, statistics, "statements", HibernateStatisticsMetrics::getPrepareStatementCount);
+            hibernateCounter(registry, statistics, "queries", HibernateStatisticsMetrics::getQueryExecutionCount);
+            hibernateCounter(registry, statistics, "entity.loads", HibernateStatisticsMetrics::getEntityLoadCount);
+            hibernateCounter(registry, statistics, "entity.fetches", HibernateStatisticsMetrics::getEntityFetchCount);
+            hibernateCounter(registry, statistics, "flushes", HibernateStatisticsMetrics::getFlushCount);
+            hibernateCounter(registry, statistics, "cache.hits", HibernateStatisticsMetrics::getSecondLevelCacheHitCount);
+            hibernateCounter(registry, statistics, "cache.misses", HibernateStatisticsMetrics::getSecondLevelCacheMissCount);
+            hibernateCounter(registry, statistics, "query.cache.hits", HibernateStatisticsMetrics::getQueryCacheHitCount);
+            hibernateCounter(registry, statistics, "query.cache.misses", HibernateStatisticsMetrics::getQueryCacheMissCount);
+        }
+    }
+
+    private static void hibernateCounter(MeterRegistry registry, HibernateStatisticsMetrics statistics, String name,
+                                         ToDoubleFunction<HibernateStatisticsMetrics> count) {
+        FunctionCounter.builder("person.service.hibernate." + name, statistics, count).register(registry);
+    }
+}
@@ -0,0 +1,230 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.persistence.EntityManagerFactory;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the metrics of the PersonService operations: latency histograms, call, row and error counts per
+ * operation, plus the Hibernate statistics of the session factory the services use. One instance is usually shared
+ * by every PersonService of an application.
+ * <p>
+ * An operation is recorded by calling start before it and success or failure after it. While metrics are disabled,
+ * start returns a marker and the other calls return immediately, so the instrumented code neither allocates nor
+ * reads the clock.
+ */
+public class PersonServiceMetrics {
+    /**
+     * A shared instance that is always disabled, used by services that have no metrics attached.
+     */
+    public static final PersonServiceMetrics DISABLED = new PersonServiceMetrics(false);
+
+    private static final long NOT_RECORDING = Long.MIN_VALUE;
+    private static final String JMX_DOMAIN = "metrics";
+
+    private final Map<PersonOperation, OperationMetrics> operations = new EnumMap<>(PersonOperation.class);
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+    private volatile boolean enabled;
+    private volatile HibernateStatisticsMetrics hibernateStatistics;
+
+    public PersonServiceMetrics() {
+        this(true);
+    }
+
+    private PersonServiceMetrics(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            for (PersonOperation operation : PersonOperation.values()) {
+                operations.put(operation, new OperationMetrics(operation));
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off. The metrics recorded so far are kept.
+     *
+     * @param enabled whether operations should be recorded
+     */
+    public void setEnabled(boolean enabled) {
+        if (this == DISABLED) {
+            throw new UnsupportedOperationException("The shared disabled metrics cannot be enabled.");
+        }
+        this.enabled = enabled;
+    }
+
+    /**
+     * Marks the start of an operation.
+     *
+     * @return the value to pass to success or failure once the operation is done
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : NOT_RECORDING;
+    }
+
+    /**
+     * Records an operation that completed normally.
+     *
+     * @param operation the operation
+     * @param start     the value returned by start
+     * @param rowCount  the number of rows the operation read or wrote
+     */
+    public void success(PersonOperation operation, long start, long rowCount) {
+        if (start != NOT_RECORDING) {
+            operations.get(operation).recordSuccess(System.nanoTime() - start, rowCount);
+        }
+    }
+
+    /**
+     * Records an operation that failed.
+     *
+     * @param operation the operation
+     * @param start     the value returned by start
+     * @param error     the exception the operation failed with
+     */
+    public void failure(PersonOperation operation, long start, Throwable error) {
+        if (start != NOT_RECORDING) {
+            operations.get(operation).recordFailure(System.nanoTime() - start, error);
+        }
+    }
+
+    /**
+     * Records an optimistic locking conflict that made an operation retry. A conflict that makes the operation give
+     * up is recorded as its failure instead.
+     *
+     * @param operation the operation
+     */
+    public void conflict(PersonOperation operation) {
+        if (enabled) {
+            operations.get(operation).recordConflict();
+        }
+    }
+
+    /**
+     * Adds rows to an operation whose rows are only known after it returned, such as a stream being consumed.
+     *
+     * @param operation the operation
+     * @param rowCount  the number of rows to add
+     */
+    public void rows(PersonOperation operation, long rowCount) {
+        if (enabled) {
+            operations.get(operation).recordRows(rowCount);
+        }
+    }
+
+    /**
+     * Returns the metrics of one operation.
+     *
+     * @param operation the operation
+     * @return the metrics of the operation, or null if this instance is the shared disabled one
+     */
+    public OperationMetrics get(PersonOperation operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * Starts reporting the Hibernate statistics of the given factory alongside the operation metrics.
+     *
+     * @param entityManagerFactory the factory the PersonServices get their EntityManagers from
+     */
+    public void bindHibernateStatistics(EntityManagerFactory entityManagerFactory) {
+        if (this == DISABLED) {
+            throw new UnsupportedOperationException("The shared disabled metrics cannot be bound.");
+        }
+        hibernateStatistics = new HibernateStatisticsMetrics(entityManagerFactory);
+    }
+
+    /**
+     * Returns the Hibernate statistics bound with bindHibernateStatistics.
+     *
+     * @return the Hibernate statistics, or null if none are bound
+     */
+    public HibernateStatisticsMetrics getHibernateStatistics() {
+        return hibernateStatistics;
+    }
+
+    /**
+     * Clears every operation metric and the bound Hibernate statistics.
+     */
+    public void reset() {
+        operations.values().forEach(OperationMetrics::reset);
+        if (hibernateStatistics != null) {
+            hibernateStatistics.reset();
+        }
+    }
+
+    /**
+     * Registers one MBean per operation, named {@code metrics:type=PersonService,name=<name>,operation=<operation>},
+     * and one for the Hibernate statistics if they are bound, in the platform MBean server.
+     *
+     * @param name the name distinguishing this instance from other registered ones
+     * @return true if every MBean was registered, false otherwise
+     */
+    public synchronized boolean registerMBeans(String name) {
+        if (this == DISABLED) {
+            System.err.println("Cannot register the MBeans of the shared disabled metrics.");
+            return false;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (OperationMetrics metrics : operations.values()) {
+                register(server, objectName(name, "operation", metrics.getOperation().metricName()), metrics);
+            }
+            if (hibernateStatistics != null) {
+                register(server, objectName(name, "component", "hibernate"), hibernateStatistics);
+            }
+            return true;
+        } catch (JMException e) {
+            System.err.println("Failed to register the metrics MBeans: " + e.getMessage());
+            unregisterMBeans();
+            return false;
+        }
+    }
+
+    /**
+     * Unregisters the MBeans registered by registerMBeans.
+     */
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registeredNames) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                System.err.println("Failed to unregister MBean " + objectName + ": " + e.getMessage());
+            }
+        }
+        registeredNames.clear();
+    }
+
+    private void register(MBeanServer server, ObjectName objectName, Object mbean) throws JMException {
+        server.registerMBean(mbean, objectName);
+        registeredNames.add(objectName);
+    }
+
+    private static ObjectName objectName(String name, String key, String value) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=PersonService,name=" + ObjectName.quote(name) + "," + key + "=" + value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (OperationMetrics metrics : operations.values()) {
+            if (metrics.getCallCount() > 0) {
+                report.append(metrics).append('\n');
+            }
+        }
+        if (hibernateStatistics != null) {
+            report.append(hibernateStatistics).append('\n');
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package services;
+
+import domain.Person;
+import metrics.PersonServiceMetrics;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * An asynchronous facade over ConcurrentPersonService for I/O-bound lookups. By default every call runs on its own
+ * virtual thread with its own EntityManager. A semaphore sized to the connection pool caps how many calls hold a
+ * connection at once, so excess calls park cheaply instead of queueing inside the pool.
+ */
+public class AsyncPersonService implements AutoCloseable {
+    private static final String POOL_SIZE_PROPERTY = "hibernate.hikari.maximumPoolSize";
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    private final ConcurrentPersonService personService;
+    private final ExecutorService executor;
+    private final Semaphore connectionPermits;
+
+    public AsyncPersonService(EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory, Executors.newVirtualThreadPerTaskExecutor(), poolSize(entityManagerFactory));
+    }
+
+    public AsyncPersonService(EntityManagerFactory entityManagerFactory, ExecutorService executor, int maxConcurrency) {
+        this.personService = new ConcurrentPersonService(entityManagerFactory);
+        this.executor = executor;
+        this.connectionPermits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * Attaches the metrics every call records its operations in.
+     *
+     * @param metrics the metrics to record in, or null to stop recording
+     */
+    public void setMetrics(PersonServiceMetrics metrics) {
+        personService.setMetrics(metrics);
+    }
+
+    /**
+     * Finds a person by primary key asynchronously.
+     *
+     * @param id the primary key of the entity
+     * @return a future completed with the found entity, or with null if not found
+     */
+    public CompletableFuture<Person> find(Integer id) {
+        return submit(() -> personService.find(id));
+    }
+
+    /**
+     * Finds people by name asynchronously.
+     *
+     * @param name the name of the person to find
+     * @return a future completed with the people whose name contains the given name
+     */
+    public CompletableFuture<List<Person>> findPersonByName(String name) {
+        return submit(() -> personService.findPersonByName(name));
+    }
+
+    /**
+     * Returns how many more calls can acquire a connection right now.
+     *
+     * @return the number of available connection permits
+     */
+    public int availableConnectionPermits() {
+        return connectionPermits.availablePermits();
+    }
+
+    /**
+     * Stops accepting new calls and waits for the submitted ones to finish.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    private <R> CompletableFuture<R> submit(Supplier<R> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                connectionPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return call.get();
+            } finally {
+                connectionPermits.release();
+            }
+        }, executor);
+    }
+
+    private static int poolSize(EntityManagerFactory entityManagerFactory) {
+        Object poolSize = entityManagerFactory.getProperties().get(POOL_SIZE_PROPERTY);
+        if (poolSize == null) {
+            return DEFAULT_POOL_SIZE;
+        }
+        try {
+            return Integer.parseInt(poolSize.toString().trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid " + POOL_SIZE_PROPERTY + " value: " + poolSize + ". Using " + DEFAULT_POOL_SIZE + ".");
+            return DEFAULT_POOL_SIZE;
+        }
+    }
+}
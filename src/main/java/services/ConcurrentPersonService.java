@@ -0,0 +1,245 @@
+package services;
+
+import domain.Person;
+import domain.PersonView;
+import metrics.PersonServiceMetrics;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A thread-safe counterpart of PersonService. Instead of holding one EntityManager for its whole life, it creates a
+ * short-lived EntityManager for every call and closes it afterwards, so any number of threads can share one instance.
+ * Entities returned by this service are always detached.
+ */
+public class ConcurrentPersonService {
+    private final EntityManagerFactory entityManagerFactory;
+    private volatile PersonNameIndex nameIndex;
+    private volatile PersonServiceMetrics metrics;
+
+    public ConcurrentPersonService(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    /**
+     * Attaches a trigram name index that every unit of work keeps in sync and uses for substring search.
+     *
+     * @param nameIndex the index to maintain, or null to stop using one
+     */
+    public void setNameIndex(PersonNameIndex nameIndex) {
+        this.nameIndex = nameIndex;
+    }
+
+    /**
+     * Attaches the metrics every unit of work records its operations in.
+     *
+     * @param metrics the metrics to record in, or null to stop recording
+     */
+    public void setMetrics(PersonServiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Makes the passed entity instance persistent.
+     *
+     * @param person the entity to persist
+     */
+    public void persist(Person person) {
+        inUnitOfWork(service -> {
+            service.persist(person);
+            return null;
+        });
+    }
+
+    /**
+     * Makes all the passed entity instances persistent in a single transaction, using JDBC batches.
+     *
+     * @param people    the entities to persist
+     * @param batchSize the number of entities written per flush
+     * @return the number of entities persisted, or 0 if the transaction was rolled back
+     */
+    public int persistAll(Collection<Person> people, int batchSize) {
+        return inUnitOfWork(service -> service.persistAll(people, batchSize));
+    }
+
+    /**
+     * Merges the state of the given entity into the database.
+     *
+     * @param person the entity to merge
+     * @return a detached copy of the merged entity, or null if the merge failed
+     */
+    public Person merge(Person person) {
+        return inUnitOfWork(service -> service.merge(person));
+    }
+
+    /**
+     * Removes the entity with the given id from the database.
+     *
+     * @param id the id of the entity to remove
+     */
+    public void remove(Integer id) {
+        inUnitOfWork(service -> {
+            service.remove(id);
+            return null;
+        });
+    }
+
+    /**
+     * Finds a person by primary key.
+     *
+     * @param id the primary key of the entity
+     * @return the found entity or null if not found
+     */
+    public Person find(Integer id) {
+        return inUnitOfWork(service -> service.find(id));
+    }
+
+    /**
+     * Finds a read-only view of a person by primary key.
+     *
+     * @param id the primary key of the person
+     * @return the view of the person, or null if not found
+     */
+    public PersonView findView(Integer id) {
+        return inUnitOfWork(service -> service.findView(id));
+    }
+
+    /**
+     * Finds the people with the given ids using batched IN queries.
+     *
+     * @param ids the primary keys of the people to find
+     * @return the people in the order of the ids, with null for the ids that do not exist
+     */
+    public List<Person> findAll(Collection<Integer> ids) {
+        return inUnitOfWork(service -> service.findAll(ids));
+    }
+
+    /**
+     * Finds people by name using a named query.
+     *
+     * @param name the name of the person to find
+     * @return the people whose name contains the given name
+     */
+    public List<Person> findPersonByName(String name) {
+        return inUnitOfWork(service -> service.findPersonByName(name));
+    }
+
+    /**
+     * Finds read-only views of the people whose name contains the given name.
+     *
+     * @param name the name of the person to find
+     * @return the views of the people whose name contains the given name
+     */
+    public List<PersonView> findPersonViewsByName(String name) {
+        return inUnitOfWork(service -> service.findPersonViewsByName(name));
+    }
+
+    /**
+     * Finds the people whose name contains the given text, using the name index when one is attached.
+     *
+     * @param text the text the name must contain
+     * @return the people whose name contains the text
+     */
+    public List<Person> findPersonByNameContaining(String text) {
+        return inUnitOfWork(service -> service.findPersonByNameContaining(text));
+    }
+
+    /**
+     * Updates the attribute of a Person with a new value. The attribute can be 'name' or 'email'.
+     *
+     * @param id        The ID of the Person to be updated.
+     * @param attribute The attribute of the Person to be updated. This can be 'name' or 'email'.
+     * @param newValue  The new value for the attribute.
+     * @return A string message indicating the result of the operation.
+     */
+    public String updatePersonDb(int id, String attribute, String newValue) {
+        return inUnitOfWork(service -> service.updatePersonDb(id, attribute, newValue));
+    }
+
+    /**
+     * Applies a change to one Person, retrying with backoff when a concurrent writer updated it first.
+     *
+     * @param id       the id of the person to update
+     * @param mutation the change to apply to the person, which may run more than once
+     * @param policy   how many attempts to make and how long to wait between them
+     * @return a detached copy of the updated person, or null if no such person exists or the update failed
+     */
+    public Person updateWithRetry(Integer id, Consumer<Person> mutation, RetryPolicy policy) {
+        return inUnitOfWork(service -> service.updateWithRetry(id, mutation, policy));
+    }
+
+    /**
+     * Locks the row of one Person and runs the work in the same transaction, holding the lock until it commits.
+     *
+     * @param id            the id of the person to lock
+     * @param lockMode      the lock mode, usually PESSIMISTIC_WRITE
+     * @param timeoutMillis the lock timeout in milliseconds, or one of the PersonService LOCK_ constants
+     * @param work          the work to run on the locked person
+     * @param <R>           the type of the result
+     * @return the result of the work, or null if the person was not found, was skipped or the work failed
+     */
+    public <R> R withLock(Integer id, LockModeType lockMode, int timeoutMillis, Function<Person, R> work) {
+        return inUnitOfWork(service -> service.withLock(id, lockMode, timeoutMillis, work));
+    }
+
+    /**
+     * Claims up to {@code limit} people matching the condition, skipping rows other workers hold, and runs the work
+     * on each of them in one transaction.
+     *
+     * @param where the condition selecting the rows that still need work
+     * @param limit the maximum number of people to claim
+     * @param work  the work to run on each claimed person
+     * @param <R>   the type of the results
+     * @return the results of the work, an empty list if nothing was left to claim, or null if the claim failed
+     */
+    public <R> List<R> claimBatch(PersonPredicate where, int limit, Function<Person, R> work) {
+        return inUnitOfWork(service -> service.claimBatch(where, limit, work));
+    }
+
+    /**
+     * Sets an attribute of every Person matching the condition with a single bulk UPDATE statement.
+     *
+     * @param where     the condition selecting the rows to update
+     * @param attribute the attribute to update. This can be 'name' or 'email'.
+     * @param newValue  the new value for the attribute
+     * @return the number of rows updated, or 0 if the update failed
+     */
+    public int updateWhere(PersonPredicate where, String attribute, String newValue) {
+        return inUnitOfWork(service -> service.updateWhere(where, attribute, newValue));
+    }
+
+    /**
+     * Removes every Person with one of the given ids using bulk DELETE statements.
+     *
+     * @param ids the ids of the people to remove
+     * @return the number of rows deleted, or 0 if the removal failed
+     */
+    public int removeAll(Collection<Integer> ids) {
+        return inUnitOfWork(service -> service.removeAll(ids));
+    }
+
+    /**
+     * Runs the given work against a PersonService backed by a new EntityManager, closing the EntityManager when the
+     * work is done.
+     *
+     * @param work the work to run
+     * @param <R>  the type of the result
+     * @return the result of the work
+     */
+    public <R> R inUnitOfWork(Function<PersonService, R> work) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            PersonService personService = new PersonService(entityManager);
+            personService.setNameIndex(nameIndex);
+            personService.setMetrics(metrics);
+            return work.apply(personService);
+        } finally {
+            entityManager.close();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package services;
+
+/**
+ * A snapshot of the second-level and query cache counters for Person.
+ *
+ * @param entityHitCount       the number of Person lookups served by the second-level cache
+ * @param entityMissCount      the number of Person lookups that had to go to the database
+ * @param entityPutCount       the number of Person entries written to the second-level cache
+ * @param entityEvictionCount  the number of Person entries evicted by size or expiration
+ * @param queryHitCount        the number of query executions served by the query cache
+ * @param queryMissCount       the number of query executions that had to go to the database
+ * @param queryPutCount        the number of query results written to the query cache
+ * @param queryEvictionCount   the number of query results evicted by size or expiration
+ */
+public record PersonCacheStatistics(long entityHitCount, long entityMissCount, long entityPutCount,
+                                    long entityEvictionCount, long queryHitCount, long queryMissCount,
+                                    long queryPutCount, long queryEvictionCount) {
+}
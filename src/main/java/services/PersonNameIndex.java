@@ -0,0 +1,169 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-process trigram index over person names for case-insensitive substring search. Every name is split into
+ * its overlapping three-character sequences, and each trigram maps to the ids of the names containing it. A search
+ * intersects the posting lists of the query's trigrams, starting with the shortest, and verifies the few remaining
+ * candidates, so its cost depends on the number of matches rather than on the number of people.
+ * <p>
+ * The index is safe to share between threads. PersonService keeps it in sync with the changes it commits.
+ */
+public class PersonNameIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<String, Set<Integer>> postings = new HashMap<>();
+    private final Map<Integer, String> names = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds a person to the index, replacing the name previously indexed for the same id.
+     *
+     * @param id   the id of the person
+     * @param name the name of the person
+     */
+    public void put(Integer id, String name) {
+        if (id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+            if (name != null) {
+                String normalized = normalize(name);
+                names.put(id, normalized);
+                for (String gram : grams(normalized)) {
+                    postings.computeIfAbsent(gram, g -> new HashSet<>()).add(id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a person from the index.
+     *
+     * @param id the id of the person
+     */
+    public void remove(Integer id) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes every person from the index.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            names.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the ids of the people whose name contains the given text, ignoring case. Texts shorter than a trigram
+     * cannot use the posting lists and are matched against every indexed name.
+     *
+     * @param text the text to search for
+     * @return the ids of the matching people, in no particular order
+     */
+    public List<Integer> search(String text) {
+        String normalized = normalize(text);
+        lock.readLock().lock();
+        try {
+            if (normalized.length() < GRAM_LENGTH) {
+                List<Integer> matches = new ArrayList<>();
+                names.forEach((id, name) -> {
+                    if (name.contains(normalized)) {
+                        matches.add(id);
+                    }
+                });
+                return matches;
+            }
+            List<Set<Integer>> lists = new ArrayList<>();
+            for (String gram : grams(normalized)) {
+                Set<Integer> ids = postings.get(gram);
+                if (ids == null) {
+                    return Collections.emptyList();
+                }
+                lists.add(ids);
+            }
+            lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+            List<Integer> matches = new ArrayList<>();
+            for (Integer id : lists.get(0)) {
+                if (containsInAll(lists, id) && names.get(id).contains(normalized)) {
+                    matches.add(id);
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of people in the index.
+     *
+     * @return the number of indexed people
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return names.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeUnlocked(Integer id) {
+        String previous = names.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (String gram : grams(previous)) {
+            Set<Integer> ids = postings.get(gram);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    private static boolean containsInAll(List<Set<Integer>> lists, Integer id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> grams(String normalized) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,50 @@
+package services;
+
+import domain.Person;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One page of people returned by keyset pagination.
+ *
+ * @param content       the people on this page, ordered by id
+ * @param nextPageToken the token to pass to get the next page, or null if this is the last page
+ */
+public record PersonPage(List<Person> content, String nextPageToken) {
+
+    /**
+     * Checks if there is a page after this one.
+     *
+     * @return true if nextPageToken can be used to fetch another page
+     */
+    public boolean hasNext() {
+        return nextPageToken != null;
+    }
+
+    /**
+     * Encodes the id of the last person on a page as an opaque page token.
+     *
+     * @param lastId the id of the last person on the page
+     * @return the page token
+     */
+    static String encodeToken(int lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Integer.toString(lastId).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Decodes a page token back into the id of the last person on the previous page.
+     *
+     * @param pageToken the page token, or null for the first page
+     * @return the id after which the next page starts
+     * @throws IllegalArgumentException if the token was not produced by encodeToken
+     */
+    static int decodeToken(String pageToken) {
+        if (pageToken == null) {
+            return Integer.MIN_VALUE;
+        }
+        return Integer.parseInt(new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,23 @@
+package services;
+
+import domain.Person;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+/**
+ * A condition on Person built with the Criteria API, used to select the rows affected by a bulk operation.
+ */
+@FunctionalInterface
+public interface PersonPredicate {
+
+    /**
+     * Builds the condition for the given query root.
+     *
+     * @param builder the criteria builder
+     * @param root    the Person root of the statement
+     * @return the condition the affected rows must satisfy
+     */
+    Predicate toPredicate(CriteriaBuilder builder, Root<Person> root);
+}
@@ -1,23 +1,155 @@
 package services;
 
 import domain.Person;
+import domain.PersonView;
+import metrics.PersonOperation;
+import metrics.PersonServiceMetrics;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.CacheMode;
+import org.hibernate.LockOptions;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SelfDirtinessTracker;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.persistence.*;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Root;
 import javax.persistence.metamodel.Attribute;
 import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.Metamodel;
+import java.io.Serial;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class PersonService {
+    /**
+     * Lock timeout that makes withLock fail at once if the row is locked, like {@code FOR UPDATE NOWAIT}.
+     */
+    public static final int LOCK_NO_WAIT = LockOptions.NO_WAIT;
+    /**
+     * Lock timeout that makes withLock treat a locked row as absent, like {@code FOR UPDATE SKIP LOCKED}.
+     */
+    public static final int LOCK_SKIP_LOCKED = LockOptions.SKIP_LOCKED;
+    /**
+     * Lock timeout that makes withLock wait for as long as the database allows.
+     */
+    public static final int LOCK_WAIT_FOREVER = LockOptions.WAIT_FOREVER;
+
+    private static final String LOCK_TIMEOUT_HINT = "javax.persistence.lock.timeout";
+    private static final String PERSON_CACHE_REGION = Person.class.getName();
+    private static final String QUERY_CACHE_REGION = "default-query-results-region";
+
+    private static final int IN_LIST_CHUNK = 1000;
+
     private final EntityManager entityManager;
+    // ids of the people this service handed out, least recently used first
+    private final LinkedHashMap<Integer, Boolean> recentlyUsed = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxManagedEntities;
+    // entities this service never handed out that a walk of the context found dirty, re-checked before walking again
+    private final Set<Object> dirtyUntracked = Collections.newSetFromMap(new IdentityHashMap<>());
+    private FlushListener flushListener;
+    private PersonNameIndex nameIndex;
+    private PersonServiceMetrics metrics = PersonServiceMetrics.DISABLED;
 
     public PersonService(EntityManager entityManager) {
         this.entityManager = entityManager;
     }
 
+    /**
+     * Attaches a trigram name index that this service keeps in sync with the persists, merges, updates and removals
+     * it commits, and that findPersonByNameContaining uses for substring search. Changes written to the database by
+     * other means, for example flushing entities modified in memory, require rebuildNameIndex.
+     *
+     * @param nameIndex the index to maintain, or null to stop using one
+     */
+    public void setNameIndex(PersonNameIndex nameIndex) {
+        this.nameIndex = nameIndex;
+    }
+
+    /**
+     * Attaches the metrics this service records its operations in: latency, calls, rows and errors by exception
+     * type. Errors are recorded before they are reported or swallowed, so failures hidden behind a null or 0 result
+     * still show up in the metrics.
+     *
+     * @param metrics the metrics to record in, or null to stop recording
+     */
+    public void setMetrics(PersonServiceMetrics metrics) {
+        this.metrics = metrics != null ? metrics : PersonServiceMetrics.DISABLED;
+    }
+
+    /**
+     * Caps the number of entities the persistence context manages, so a long-lived service does not grow without
+     * bound. Whenever an operation leaves more entities managed than the cap and no transaction is active, the
+     * entities this service handed out least recently are detached, starting with those it never handed out, such
+     * as entities loaded through createQuery. Entities with unflushed changes are never detached; they are evicted
+     * at a later boundary once flushed. A detached entity can still be read, but changes to it are only written
+     * through merge.
+     *
+     * @param maxManagedEntities the maximum number of managed entities, or 0 for no limit
+     */
+    public void setMaxManagedEntities(int maxManagedEntities) {
+        if (maxManagedEntities < 0) {
+            throw new IllegalArgumentException("maxManagedEntities must not be negative.");
+        }
+        this.maxManagedEntities = maxManagedEntities;
+        if (maxManagedEntities == 0) {
+            recentlyUsed.clear();
+            dirtyUntracked.clear();
+        } else {
+            if (flushListener == null) {
+                flushListener = new FlushListener();
+                entityManager.unwrap(Session.class).addEventListeners(flushListener);
+            }
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    /**
+     * Returns the number of entities the persistence context currently manages.
+     *
+     * @return the number of managed entities
+     */
+    public int getManagedEntityCount() {
+        return entityManager.unwrap(SessionImplementor.class).getPersistenceContextInternal()
+                .getNumberOfManagedEntities();
+    }
+
     /**
      * Solicits the user to make a choice whether to execute the method or get more details.
      *
@@ -40,18 +172,69 @@ public class PersonService {
      * @param person the entity to persist
      */
     public void persist(Person person) {
+        long start = metrics.start();
         try {
             entityManager.getTransaction().begin();
             entityManager.persist(person);
             entityManager.getTransaction().commit();
+            indexName(person);
+            retain(person);
+            metrics.success(PersonOperation.PERSIST, start, 1);
         } catch (Exception e) {
             if (entityManager.getTransaction().isActive()) {
                 entityManager.getTransaction().rollback();
             }
+            metrics.failure(PersonOperation.PERSIST, start, e);
             System.err.println("Failed to persist entity: " + e.getMessage());
         }
     }
 
+    /**
+     * Makes all the passed entity instances managed and persistent in a single transaction. The persistence context
+     * is flushed and cleared every {@code batchSize} entities, so the inserts reach the database as JDBC batches and
+     * the already written entities do not pile up in memory. Note that clearing also detaches any other entity
+     * managed by this EntityManager.
+     *
+     * @param people    the entities to persist
+     * @param batchSize the number of entities written per flush, ideally equal to hibernate.jdbc.batch_size
+     * @return the number of entities persisted, or 0 if the transaction was rolled back
+     */
+    public int persistAll(Collection<Person> people, int batchSize) {
+        if (batchSize < 1) {
+            System.err.println("Failed to persist entities: batch size must be greater than zero.");
+            return 0;
+        }
+        long start = metrics.start();
+        int count = 0;
+        Session session = entityManager.unwrap(Session.class);
+        CacheMode cacheMode = session.getCacheMode();
+        try {
+            // Bulk loads would otherwise flood the second-level cache with entries nobody asked for
+            session.setCacheMode(CacheMode.IGNORE);
+            entityManager.getTransaction().begin();
+            for (Person person : people) {
+                entityManager.persist(person);
+                if (++count % batchSize == 0) {
+                    entityManager.flush();
+                    clearPersistenceContext();
+                }
+            }
+            entityManager.getTransaction().commit();
+            people.forEach(this::indexName);
+            metrics.success(PersonOperation.PERSIST_ALL, start, count);
+        } catch (Exception e) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            metrics.failure(PersonOperation.PERSIST_ALL, start, e);
+            System.err.println("Failed to persist entities: " + e.getMessage());
+            return 0;
+        } finally {
+            session.setCacheMode(cacheMode);
+        }
+        return count;
+    }
+
     /**
      * Merges the changes of a detached entity back into the persistence context.
      *
@@ -59,47 +242,91 @@ public class PersonService {
      * @param id     the id of the person in the list to merge
      */
     public void merge(List<Person> people, Integer id) {
+        long start = metrics.start();
         try {
             entityManager.getTransaction().begin();
-            Person person = people.stream()
-                    .filter(p -> p.getId().equals(id))
-                    .findFirst()
-                    .orElse(null);
+            // One pass finds both the person and its position; indexOf would scan the list a second time
+            ListIterator<Person> iterator = people.listIterator();
+            Person person = null;
+            while (person == null && iterator.hasNext()) {
+                Person candidate = iterator.next();
+                if (id.equals(candidate.getId())) {
+                    person = candidate;
+                }
+            }
             if (person != null) {
                 Person managedPerson = entityManager.merge(person);
-                int index = people.indexOf(person);
-                people.set(index, managedPerson);
+                iterator.set(managedPerson);
                 entityManager.getTransaction().commit();
+                indexName(managedPerson);
+                retain(managedPerson);
+                metrics.success(PersonOperation.MERGE, start, 1);
             } else {
+                metrics.success(PersonOperation.MERGE, start, 0);
                 System.err.println("Failed to merge entity: No entity with id " + id + " found.");
             }
         } catch (Exception e) {
             if (entityManager.getTransaction().isActive()) {
                 entityManager.getTransaction().rollback();
             }
+            metrics.failure(PersonOperation.MERGE, start, e);
             System.err.println("Failed to merge entity: " + e.getMessage()+ "\n");
         }
     }
 
+    /**
+     * Merges the state of the given entity into the persistence context.
+     *
+     * @param person the entity to merge
+     * @return the managed entity the state was merged into, or null if the merge failed
+     */
+    public Person merge(Person person) {
+        long start = metrics.start();
+        try {
+            entityManager.getTransaction().begin();
+            Person managedPerson = entityManager.merge(person);
+            entityManager.getTransaction().commit();
+            indexName(managedPerson);
+            retain(managedPerson);
+            metrics.success(PersonOperation.MERGE, start, 1);
+            return managedPerson;
+        } catch (Exception e) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            metrics.failure(PersonOperation.MERGE, start, e);
+            System.err.println("Failed to merge entity: " + e.getMessage() + "\n");
+            return null;
+        }
+    }
+
     /**
      * Removes the entity instance from the persistence context, causing the removal from the database.
      *
      * @param id the id of the entity to remove
      */
     public void remove(Integer id) {
+        long start = metrics.start();
         try {
             entityManager.getTransaction().begin();
             Person person = entityManager.find(Person.class, id);
             if (person != null) {
                 entityManager.remove(person);
                 entityManager.getTransaction().commit();
+                if (nameIndex != null) {
+                    nameIndex.remove(id);
+                }
+                recentlyUsed.remove(id);
+                metrics.success(PersonOperation.REMOVE, start, 1);
             } else {
+                metrics.success(PersonOperation.REMOVE, start, 0);
                 System.err.println("Failed to remove entity: No entity with id " + id + " found.\n");
             }
         } catch (Exception e) {
             if (entityManager.getTransaction().isActive()) {
                 entityManager.getTransaction().rollback();
             }
+            metrics.failure(PersonOperation.REMOVE, start, e);
             System.err.println("Failed to remove entity: " + e.getMessage() + "\n");
         }
     }
@@ -111,14 +338,103 @@ public class PersonService {
      * @return the found entity or null if not found
      */
     public Person find(Integer id) {
+        long start = metrics.start();
         try {
-            return entityManager.find(Person.class, id);
+            Person person = entityManager.find(Person.class, id);
+            retain(person);
+            metrics.success(PersonOperation.FIND, start, person != null ? 1 : 0);
+            return person;
         } catch (IllegalArgumentException e) {
+            metrics.failure(PersonOperation.FIND, start, e);
             System.err.println("Invalid arguments provided for find operation: " + e.getMessage());
             return null;
         }
     }
 
+    /**
+     * Finds the people with the given ids with as few queries as possible, instead of one query per id. People this
+     * service already manages or that are in the second-level cache are taken from there, and only the remaining
+     * ids are read from the database with IN queries of up to 1000 ids. Hibernate pads each IN list to the next
+     * power of two (hibernate.query.in_clause_parameter_padding), so any number of ids needs only a handful of
+     * distinct statements, which stay in the statement and query plan caches. People removed in the current
+     * transaction are returned as null, as find would.
+     *
+     * @param ids the primary keys of the people to find
+     * @return the people in the order of the ids, with null for the ids that do not exist
+     */
+    public List<Person> findAll(Collection<Integer> ids) {
+        long start = metrics.start();
+        try {
+            SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+            PersistenceContext context = session.getPersistenceContextInternal();
+            EntityPersister persister = session.getFactory().getMetamodel().entityPersister(Person.class);
+            boolean readCache = session.getCacheMode().isGetEnabled();
+            Map<Integer, Person> found = new HashMap<>();
+            List<Integer> missing = new ArrayList<>();
+            for (Integer id : ids) {
+                if (id == null || found.containsKey(id)) {
+                    continue;
+                }
+                Person person = (Person) context.getEntity(session.generateEntityKey(id, persister));
+                if (person != null) {
+                    Status status = context.getEntry(person).getStatus();
+                    found.put(id, status == Status.DELETED || status == Status.GONE ? null : person);
+                } else if (readCache && session.getFactory().getCache().containsEntity(Person.class, id)) {
+                    // Served from the second-level cache, unless another thread evicts the entry in between
+                    found.put(id, session.get(Person.class, id));
+                } else {
+                    found.put(id, null);
+                    missing.add(id);
+                }
+            }
+            for (int from = 0; from < missing.size(); from += IN_LIST_CHUNK) {
+                List<Person> loaded = entityManager.createNamedQuery("findPeopleByIds", Person.class)
+                        .setParameter("ids", missing.subList(from, Math.min(from + IN_LIST_CHUNK, missing.size())))
+                        .getResultList();
+                for (Person person : loaded) {
+                    found.put(person.getId(), person);
+                }
+            }
+            List<Person> people = new ArrayList<>(ids.size());
+            int rows = 0;
+            for (Integer id : ids) {
+                Person person = id != null ? found.get(id) : null;
+                people.add(person);
+                if (person != null) {
+                    rows++;
+                }
+            }
+            retainAll(people);
+            metrics.success(PersonOperation.FIND_ALL, start, rows);
+            return people;
+        } catch (RuntimeException e) {
+            metrics.failure(PersonOperation.FIND_ALL, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Finds a read-only view of a person by its primary key. The row is read straight into a PersonView, so nothing
+     * is added to the persistence context: no managed entity, no snapshot for dirty checking and nothing to clear
+     * afterwards. The view bypasses the second-level cache and always reads the database.
+     *
+     * @param id the primary key of the person
+     * @return the view of the person, or null if not found
+     */
+    public PersonView findView(Integer id) {
+        long start = metrics.start();
+        try {
+            List<PersonView> views = entityManager.createNamedQuery("findPersonViewById", PersonView.class)
+                    .setParameter("id", id)
+                    .getResultList();
+            metrics.success(PersonOperation.FIND_VIEW, start, views.size());
+            return views.isEmpty() ? null : views.get(0);
+        } catch (RuntimeException e) {
+            metrics.failure(PersonOperation.FIND_VIEW, start, e);
+            throw e;
+        }
+    }
+
     /**
      * Gets a reference to the entity without retrieving its data until needed (lazy loading).
      *
@@ -126,9 +442,13 @@ public class PersonService {
      * @return a reference to the entity
      */
     public Person getReference(Integer id) {
+        long start = metrics.start();
         try {
-            return entityManager.getReference(Person.class, id);
+            Person person = entityManager.getReference(Person.class, id);
+            metrics.success(PersonOperation.GET_REFERENCE, start, 1);
+            return person;
         } catch (EntityNotFoundException e) {
+            metrics.failure(PersonOperation.GET_REFERENCE, start, e);
             System.err.println("Entity with id " + id + " not found: " + e.getMessage());
             return null;
         }
@@ -138,14 +458,17 @@ public class PersonService {
      * Synchronizes the persistence context with the underlying database, writing any changes.
      */
     public void flush() {
+        long start = metrics.start();
         try {
             entityManager.getTransaction().begin();
             entityManager.flush();
             entityManager.getTransaction().commit();
+            metrics.success(PersonOperation.FLUSH, start, 0);
         } catch (PersistenceException e) {
             if (entityManager.getTransaction().isActive()) {
                 entityManager.getTransaction().rollback();
             }
+            metrics.failure(PersonOperation.FLUSH, start, e);
             System.err.println("Failed to synchronize with the database: " + e.getMessage());
         }
     }
@@ -170,9 +493,12 @@ public class PersonService {
      * Clears the persistence context, detaching all entities.
      */
     public void clear() {
+        long start = metrics.start();
         try {
-            entityManager.clear();
+            clearPersistenceContext();
+            metrics.success(PersonOperation.CLEAR, start, 0);
         } catch (IllegalStateException e) {
+            metrics.failure(PersonOperation.CLEAR, start, e);
             System.err.println("Cannot clear the persistence context: " + e.getMessage());
         }
     }
@@ -183,14 +509,19 @@ public class PersonService {
      * @param id the ID of the entity to detach
      */
     public void detach(Integer id) {
+        long start = metrics.start();
         try {
             Person person = entityManager.find(Person.class, id);
             if (person != null) {
                 entityManager.detach(person);
+                recentlyUsed.remove(id);
+                metrics.success(PersonOperation.DETACH, start, 1);
             } else {
+                metrics.success(PersonOperation.DETACH, start, 0);
                 System.out.println("The person with the entered ID does not exist in the database.");
             }
         } catch (IllegalArgumentException e) {
+            metrics.failure(PersonOperation.DETACH, start, e);
             System.err.println("Cannot detach a null entity: " + e.getMessage());
         }
     }
@@ -244,6 +575,53 @@ public class PersonService {
         }
     }
 
+    /**
+     * Returns the second-level and query cache statistics for Person, so it can be confirmed that repeated lookups
+     * are served from the cache. Requires hibernate.generate_statistics to be enabled.
+     *
+     * @return the current cache statistics, or null if they cannot be retrieved
+     */
+    public PersonCacheStatistics getCacheStatistics() {
+        try {
+            Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+            CacheRegionStatistics personRegion = statistics.getDomainDataRegionStatistics(PERSON_CACHE_REGION);
+            return new PersonCacheStatistics(
+                    personRegion.getHitCount(),
+                    personRegion.getMissCount(),
+                    personRegion.getPutCount(),
+                    cacheEvictionCount(PERSON_CACHE_REGION),
+                    statistics.getQueryCacheHitCount(),
+                    statistics.getQueryCacheMissCount(),
+                    statistics.getQueryCachePutCount(),
+                    cacheEvictionCount(QUERY_CACHE_REGION));
+        } catch (IllegalStateException | IllegalArgumentException | PersistenceException e) {
+            System.err.println("Cannot retrieve the cache statistics: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the eviction count of a cache from the standard JCache statistics MBean.
+     *
+     * @param cacheName the name of the cache region
+     * @return the number of evictions, or -1 if the cache does not publish statistics
+     */
+    private static long cacheEvictionCount(String cacheName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            long evictions = -1;
+            for (ObjectName name : server.queryNames(new ObjectName("javax.cache:type=CacheStatistics,*"), null)) {
+                if (cacheName.equals(name.getKeyProperty("Cache"))) {
+                    evictions = Math.max(evictions, 0) + (Long) server.getAttribute(name, "CacheEvictions");
+                }
+            }
+            return evictions;
+        } catch (JMException e) {
+            System.err.println("Cannot read the eviction count of cache " + cacheName + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
     /**
      * Creates a new instance of Query for the provided JPQL query.
      *
@@ -251,14 +629,42 @@ public class PersonService {
      * @return the new query instance
      */
     public Query createQuery(String qlString) {
+        long start = metrics.start();
         try {
-            return entityManager.createQuery(qlString);
+            Query query = entityManager.createQuery(qlString);
+            metrics.success(PersonOperation.CREATE_QUERY, start, 0);
+            return query;
         } catch (IllegalArgumentException e) {
+            metrics.failure(PersonOperation.CREATE_QUERY, start, e);
             System.err.println("Invalid JPQL query: " + e.getMessage());
             return null;
         }
     }
 
+    /**
+     * Creates a new instance of TypedQuery for the provided JPQL query. Hibernate keeps the parsed plan of every
+     * query text in an LRU cache (hibernate.query.plan_cache_max_size), so a query text that is created again skips
+     * parsing and translation. Values should be bound with setParameter instead of being concatenated into the text:
+     * every distinct text is a plan cache miss, and a distinct SQL string the JDBC driver has to prepare again.
+     *
+     * @param qlString    a JPQL query, with named or positional parameters for the values that vary
+     * @param resultClass the type of the query result
+     * @param <T>         the result type
+     * @return the new query instance, or null if the query is invalid or does not return the result type
+     */
+    public <T> TypedQuery<T> createQuery(String qlString, Class<T> resultClass) {
+        long start = metrics.start();
+        try {
+            TypedQuery<T> query = entityManager.createQuery(qlString, resultClass);
+            metrics.success(PersonOperation.CREATE_QUERY, start, 0);
+            return query;
+        } catch (IllegalArgumentException e) {
+            metrics.failure(PersonOperation.CREATE_QUERY, start, e);
+            System.err.println("Invalid JPQL query or result class: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Finds a person by name using a named query.
      *
@@ -266,12 +672,400 @@ public class PersonService {
      * @return the person with the given name, or null if no such person was found
      */
     public List<Person> findPersonByName(String name) {
-        TypedQuery<Person> query = entityManager.createNamedQuery("findPersonByName", Person.class);
-        query.setParameter("name", "%" + name + "%");
+        long start = metrics.start();
         try {
-            return query.getResultList();
+            TypedQuery<Person> query = entityManager.createNamedQuery("findPersonByName", Person.class);
+            query.setParameter("name", "%" + name + "%");
+            List<Person> people = query.getResultList();
+            retainAll(people);
+            metrics.success(PersonOperation.FIND_PERSON_BY_NAME, start, people.size());
+            return people;
         } catch (NoResultException e) {
+            metrics.success(PersonOperation.FIND_PERSON_BY_NAME, start, 0);
             return null;
+        } catch (RuntimeException e) {
+            metrics.failure(PersonOperation.FIND_PERSON_BY_NAME, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Finds read-only views of the people whose name contains the given name. This is the fast path of
+     * findPersonByName for reporting: the rows are mapped straight into PersonView records, which the persistence
+     * context never manages, so no snapshots are taken and memory use does not grow until the next clear.
+     *
+     * @param name the name of the person to find
+     * @return the views of the people whose name contains the given name
+     */
+    public List<PersonView> findPersonViewsByName(String name) {
+        long start = metrics.start();
+        try {
+            List<PersonView> views = entityManager.createNamedQuery("findPersonViewsByName", PersonView.class)
+                    .setParameter("name", "%" + name + "%")
+                    .getResultList();
+            metrics.success(PersonOperation.FIND_PERSON_VIEWS_BY_NAME, start, views.size());
+            return views;
+        } catch (RuntimeException e) {
+            metrics.failure(PersonOperation.FIND_PERSON_VIEWS_BY_NAME, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the people whose name starts with the given prefix. Unlike findPersonByName, the pattern has no leading
+     * wildcard, so the database can answer it from the index on the name column.
+     *
+     * @param prefix the beginning of the name, matched literally
+     * @return the people whose name starts with the prefix
+     */
+    public List<Person> findPersonByNamePrefix(String prefix) {
+        long start = metrics.start();
+        try {
+            TypedQuery<Person> query = entityManager.createNamedQuery("findPersonByNamePrefix", Person.class);
+            query.setParameter("prefix", escapeLikePattern(prefix) + "%");
+            List<Person> people = query.getResultList();
+            retainAll(people);
+            metrics.success(PersonOperation.FIND_PERSON_BY_NAME_PREFIX, start, people.size());
+            return people;
+        } catch (RuntimeException e) {
+            metrics.failure(PersonOperation.FIND_PERSON_BY_NAME_PREFIX, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the people whose name contains the given text, ignoring case. With a name index attached, the matching
+     * ids come from the index and only those rows are loaded; otherwise this falls back to findPersonByName.
+     *
+     * @param text the text the name must contain
+     * @return the people whose name contains the text
+     */
+    public List<Person> findPersonByNameContaining(String text) {
+        if (nameIndex == null) {
+            return findPersonByName(text);
+        }
+        long start = metrics.start();
+        try {
+            List<Integer> ids = nameIndex.search(text);
+            List<Person> people = new ArrayList<>(ids.size());
+            for (int from = 0; from < ids.size(); from += IN_LIST_CHUNK) {
+                people.addAll(entityManager.createNamedQuery("findPeopleByIds", Person.class)
+                        .setParameter("ids", ids.subList(from, Math.min(from + IN_LIST_CHUNK, ids.size())))
+                        .getResultList());
+            }
+            retainAll(people);
+            metrics.success(PersonOperation.FIND_PERSON_BY_NAME_CONTAINING, start, people.size());
+            return people;
+        } catch (RuntimeException e) {
+            metrics.failure(PersonOperation.FIND_PERSON_BY_NAME_CONTAINING, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Rebuilds the attached name index from the database, streaming every person.
+     *
+     * @return the number of people indexed, or 0 if no name index is attached
+     */
+    public int rebuildNameIndex() {
+        if (nameIndex == null) {
+            System.err.println("Cannot rebuild the name index: no name index is attached.");
+            return 0;
+        }
+        long start = metrics.start();
+        try {
+            nameIndex.clear();
+            try (Stream<Person> people = streamAll(IN_LIST_CHUNK)) {
+                people.forEach(this::indexName);
+            }
+            int size = nameIndex.size();
+            metrics.success(PersonOperation.REBUILD_NAME_INDEX, start, size);
+            return size;
+        } catch (RuntimeException e) {
+            metrics.failure(PersonOperation.REBUILD_NAME_INDEX, start, e);
+            throw e;
+        }
+    }
+
+    private void retain(Person person) {
+        if (maxManagedEntities > 0 && person != null && person.getId() != null) {
+            recentlyUsed.put(person.getId(), Boolean.TRUE);
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    private void retainAll(Collection<Person> people) {
+        if (maxManagedEntities > 0) {
+            for (Person person : people) {
+                if (person != null && person.getId() != null) {
+                    recentlyUsed.put(person.getId(), Boolean.TRUE);
+                }
+            }
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    private void clearPersistenceContext() {
+        entityManager.clear();
+        recentlyUsed.clear();
+        dirtyUntracked.clear();
+    }
+
+    /**
+     * Detaches clean entities until the persistence context is back within maxManagedEntities: first the entities
+     * this service never handed out, then the least recently used ones. Nothing is detached inside a transaction,
+     * where the caller may still be working on any managed entity.
+     */
+    private void evictLeastRecentlyUsed() {
+        if (maxManagedEntities == 0 || entityManager.getTransaction().isActive()) {
+            return;
+        }
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        PersistenceContext context = session.getPersistenceContextInternal();
+        int excess = context.getNumberOfManagedEntities() - maxManagedEntities;
+        if (excess <= 0) {
+            return;
+        }
+        // Untracked entities found dirty earlier only become evictable once flushed, and then they come first
+        if (flushListener.flushed) {
+            Iterator<Object> dirty = dirtyUntracked.iterator();
+            while (excess > 0 && dirty.hasNext()) {
+                Object entity = dirty.next();
+                EntityEntry entry = context.getEntry(entity);
+                if (entry == null || isTracked(entity)) {
+                    dirty.remove();
+                } else if (isClean(session, entity, entry)) {
+                    dirty.remove();
+                    session.evict(entity);
+                    excess--;
+                }
+            }
+            flushListener.flushed = dirty.hasNext();
+        }
+        // Walking the whole context is only worth it while it holds untracked entities besides the dirty ones above
+        if (excess > 0 && context.getNumberOfManagedEntities() - recentlyUsed.size() > dirtyUntracked.size()) {
+            for (Map.Entry<Object, EntityEntry> entry : context.reentrantSafeEntityEntries()) {
+                if (excess == 0) {
+                    return;
+                }
+                Object entity = entry.getKey();
+                if (isTracked(entity)) {
+                    dirtyUntracked.remove(entity);
+                } else if (isClean(session, entity, entry.getValue())) {
+                    dirtyUntracked.remove(entity);
+                    session.evict(entity);
+                    excess--;
+                } else {
+                    dirtyUntracked.add(entity);
+                }
+            }
+        }
+        Iterator<Integer> ids = recentlyUsed.keySet().iterator();
+        while (excess > 0 && ids.hasNext()) {
+            Person person = managedPerson(ids.next());
+            if (person == null) {
+                ids.remove();
+            } else if (isClean(session, person, context.getEntry(person))) {
+                ids.remove();
+                session.evict(person);
+                excess--;
+            }
+        }
+    }
+
+    private boolean isTracked(Object entity) {
+        return entity instanceof Person person && recentlyUsed.containsKey(person.getId());
+    }
+
+    private static boolean isClean(SessionImplementor session, Object entity, EntityEntry entry) {
+        if (entry == null || entry.getStatus() == Status.READ_ONLY) {
+            return true;
+        }
+        if (entry.getStatus() != Status.MANAGED) {
+            return false;
+        }
+        if (entity instanceof SelfDirtinessTracker tracker) {
+            return !tracker.$$_hibernate_hasDirtyAttributes();
+        }
+        EntityPersister persister = entry.getPersister();
+        return persister.findDirty(persister.getPropertyValues(entity), entry.getLoadedState(), entity, session) == null;
+    }
+
+    private void indexName(Person person) {
+        if (nameIndex != null && person != null) {
+            nameIndex.put(person.getId(), person.getName());
+        }
+    }
+
+    private static String escapeLikePattern(String text) {
+        return text.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    /**
+     * Returns one page of people ordered by id, using keyset pagination: the page token remembers the last id seen
+     * and the query seeks past it, so fetching a late page costs the same as fetching the first one.
+     *
+     * @param pageToken the nextPageToken of the previous page, or null for the first page
+     * @param pageSize  the maximum number of people on the page
+     * @return the page, or null if the page token is invalid or the page size is less than one
+     */
+    public PersonPage findPage(String pageToken, int pageSize) {
+        return findPage(entityManager.createNamedQuery("findPeopleAfter", Person.class), pageToken, pageSize);
+    }
+
+    /**
+     * Returns one page of the people whose name contains the given name, ordered by id, using keyset pagination.
+     *
+     * @param name      the name of the person to find
+     * @param pageToken the nextPageToken of the previous page, or null for the first page
+     * @param pageSize  the maximum number of people on the page
+     * @return the page, or null if the page token is invalid or the page size is less than one
+     */
+    public PersonPage findPersonByNamePage(String name, String pageToken, int pageSize) {
+        TypedQuery<Person> query = entityManager.createNamedQuery("findPersonByNameAfter", Person.class);
+        query.setParameter("name", "%" + name + "%");
+        return findPage(query, pageToken, pageSize);
+    }
+
+    private PersonPage findPage(TypedQuery<Person> query, String pageToken, int pageSize) {
+        if (pageSize < 1) {
+            System.err.println("Failed to fetch page: page size must be greater than zero.");
+            return null;
+        }
+        int lastId;
+        try {
+            lastId = PersonPage.decodeToken(pageToken);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid page token: " + pageToken);
+            return null;
+        }
+        long start = metrics.start();
+        List<Person> people;
+        try {
+            // One extra row tells whether another page follows without a separate count query; a page of
+            // Integer.MAX_VALUE people cannot be followed by another, so it needs no extra row
+            people = query.setParameter("lastId", lastId)
+                    .setMaxResults(Math.min(pageSize, Integer.MAX_VALUE - 1) + 1)
+                    .getResultList();
+        } catch (RuntimeException e) {
+            metrics.failure(PersonOperation.FIND_PAGE, start, e);
+            throw e;
+        }
+        retainAll(people);
+        if (people.size() <= pageSize) {
+            metrics.success(PersonOperation.FIND_PAGE, start, people.size());
+            return new PersonPage(people, null);
+        }
+        metrics.success(PersonOperation.FIND_PAGE, start, pageSize);
+        List<Person> content = people.subList(0, pageSize);
+        return new PersonPage(content, PersonPage.encodeToken(content.get(pageSize - 1).getId()));
+    }
+
+    /**
+     * Streams the people whose name contains the given name, reading the rows through a forward-only cursor. Each
+     * person is detached as soon as it is handed out, so memory use does not grow with the number of rows. The
+     * stream holds an open cursor and must be closed, preferably with try-with-resources.
+     *
+     * @param name      the name of the person to find
+     * @param fetchSize the number of rows the JDBC driver fetches per round trip
+     * @return a stream of detached people, or an empty stream if the query cannot be executed
+     */
+    public Stream<Person> streamPersonByName(String name, int fetchSize) {
+        TypedQuery<Person> query = entityManager.createNamedQuery("findPersonByName", Person.class);
+        query.setParameter("name", "%" + name + "%");
+        return stream(query, fetchSize).map(Person.class::cast);
+    }
+
+    /**
+     * Streams every person ordered by id, reading the rows through a forward-only cursor. Each person is detached as
+     * soon as it is handed out. The stream holds an open cursor and must be closed.
+     *
+     * @param fetchSize the number of rows the JDBC driver fetches per round trip
+     * @return a stream of detached people, or an empty stream if the query cannot be executed
+     */
+    public Stream<Person> streamAll(int fetchSize) {
+        return stream(entityManager.createNamedQuery("findAllPeople", Person.class), fetchSize).map(Person.class::cast);
+    }
+
+    /**
+     * Streams read-only views of the people whose id lies in the given range, ordered by id, reading the rows through
+     * a forward-only cursor. No entity is created or managed, so this is the cheapest way to read many rows. The
+     * stream holds an open cursor and must be closed.
+     *
+     * @param fromId    the lowest id to include
+     * @param toId      the highest id to include
+     * @param fetchSize the number of rows the JDBC driver fetches per round trip
+     * @return a stream of views, or an empty stream if the query cannot be executed
+     */
+    public Stream<PersonView> streamViews(int fromId, int toId, int fetchSize) {
+        TypedQuery<PersonView> query = entityManager.createNamedQuery("findPersonViewsInRange", PersonView.class);
+        query.setParameter("fromId", fromId).setParameter("toId", toId);
+        return stream(query, fetchSize).map(PersonView.class::cast);
+    }
+
+    /**
+     * Streams the results of a query created by createQuery or createNativeQuery through a forward-only cursor,
+     * instead of loading the whole result list into memory. Entities in the results are detached as soon as they are
+     * handed out. The stream holds an open cursor and must be closed.
+     *
+     * @param query     the query to execute
+     * @param fetchSize the number of rows the JDBC driver fetches per round trip
+     * @return a stream of the query results, or an empty stream if the query cannot be executed
+     */
+    public Stream<?> stream(Query query, int fetchSize) {
+        long start = metrics.start();
+        Session session = entityManager.unwrap(Session.class);
+        CacheMode cacheMode = session.getCacheMode();
+        ScrollableResults results;
+        try {
+            // Rows are hydrated lazily while the stream is consumed, so the session itself must skip the
+            // second-level cache until the stream is closed; a query level cache mode only covers scroll()
+            session.setCacheMode(CacheMode.IGNORE);
+            org.hibernate.query.Query<?> hibernateQuery = query.unwrap(org.hibernate.query.Query.class);
+            hibernateQuery.setFetchSize(fetchSize);
+            hibernateQuery.setReadOnly(true);
+            results = hibernateQuery.scroll(ScrollMode.FORWARD_ONLY);
+            // The latency covers opening the cursor; rows are counted as they are handed out
+            metrics.success(PersonOperation.STREAM, start, 0);
+        } catch (PersistenceException | IllegalStateException e) {
+            session.setCacheMode(cacheMode);
+            metrics.failure(PersonOperation.STREAM, start, e);
+            System.err.println("Failed to execute the query: " + e.getMessage());
+            return Stream.empty();
+        }
+        Spliterator<Object> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Object> action) {
+                if (!results.next()) {
+                    return false;
+                }
+                Object[] row = results.get();
+                Object result = row.length == 1 ? row[0] : row;
+                evictEntities(session, result);
+                metrics.rows(PersonOperation.STREAM, 1);
+                action.accept(result);
+                return true;
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            results.close();
+            session.setCacheMode(cacheMode);
+        });
+    }
+
+    /**
+     * Detaches the entities contained in a query result from the persistence context.
+     *
+     * @param session the session the result was loaded by
+     * @param result  a single query result, either a value or an array of values
+     */
+    private static void evictEntities(Session session, Object result) {
+        if (result instanceof Object[] values) {
+            for (Object value : values) {
+                evictEntities(session, value);
+            }
+        } else if (result != null && result.getClass().isAnnotationPresent(Entity.class) && session.contains(result)) {
+            session.evict(result);
         }
     }
 
@@ -282,9 +1076,13 @@ public class PersonService {
      * @return the new query instance
      */
     public Query createNativeQuery(String sqlString) {
+        long start = metrics.start();
         try {
-            return entityManager.createNativeQuery(sqlString);
+            Query query = entityManager.createNativeQuery(sqlString);
+            metrics.success(PersonOperation.CREATE_NATIVE_QUERY, start, 0);
+            return query;
         } catch (IllegalArgumentException e) {
+            metrics.failure(PersonOperation.CREATE_NATIVE_QUERY, start, e);
             System.err.println("Invalid SQL query: " + e.getMessage());
             return null;
         }
@@ -298,9 +1096,13 @@ public class PersonService {
      * @return the new query instance
      */
     public Query createNativeQuery(String sqlString, Class<?> resultClass) {
+        long start = metrics.start();
         try {
-            return entityManager.createNativeQuery(sqlString, resultClass);
+            Query query = entityManager.createNativeQuery(sqlString, resultClass);
+            metrics.success(PersonOperation.CREATE_NATIVE_QUERY, start, 0);
+            return query;
         } catch (IllegalArgumentException e) {
+            metrics.failure(PersonOperation.CREATE_NATIVE_QUERY, start, e);
             System.err.println("Invalid SQL query or result class: " + e.getMessage());
             return null;
         }
@@ -314,47 +1116,232 @@ public class PersonService {
      * @return the new query instance
      */
     public Query createNativeQuery(String sqlString, String resultSetMapping) {
+        long start = metrics.start();
         try {
-            return entityManager.createNativeQuery(sqlString, resultSetMapping);
+            Query query = entityManager.createNativeQuery(sqlString, resultSetMapping);
+            metrics.success(PersonOperation.CREATE_NATIVE_QUERY, start, 0);
+            return query;
         } catch (IllegalArgumentException e) {
+            metrics.failure(PersonOperation.CREATE_NATIVE_QUERY, start, e);
             System.err.println("Invalid SQL query or result set mapping: " + e.getMessage());
             return null;
         }
     }
 
     /**
-     * Locks the entity with the provided lock type.
+     * Creates a native SQL query whose rows are returned as instances of a record class, for reads that only need
+     * some columns, such as wide exports. Each column fills the record component with the same name, ignoring case
+     * and underscores, so {@code SELECT name, email FROM Person} can fill a record with name and email components.
+     * The rows are plain values that never enter the persistence context, and the record's constructor and component
+     * names are resolved once per class instead of by reflection on every row. Numbers are converted exactly to
+     * integral and BigDecimal components, so reading a value that does not fit, such as 2.5 into an int, fails with
+     * IllegalArgumentException instead of truncating it; double and float components are rounded.
+     *
+     * @param sqlString  a native SQL query
+     * @param recordType the record class to create for each row
+     * @param <R>        the record type
+     * @return the new query instance, or null if the query cannot be created
+     */
+    @SuppressWarnings({"unchecked", "deprecation"})
+    public <R extends Record> TypedQuery<R> createNativeRecordQuery(String sqlString, Class<R> recordType) {
+        long start = metrics.start();
+        try {
+            NativeQuery<R> query = entityManager.unwrap(Session.class).createNativeQuery(sqlString);
+            query.setResultTransformer(new RecordResultTransformer<>(recordType));
+            metrics.success(PersonOperation.CREATE_NATIVE_QUERY, start, 0);
+            return query;
+        } catch (IllegalArgumentException | PersistenceException e) {
+            metrics.failure(PersonOperation.CREATE_NATIVE_QUERY, start, e);
+            System.err.println("Invalid SQL query or record class: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Locks the entity with the provided lock type. The lock is taken in a transaction of its own and released when
+     * this method returns; use withLock to do work while holding it.
      *
      * @param entity   the entity to lock
      * @param lockMode the lock mode
      */
     public void lock(Object entity, LockModeType lockMode) {
+        long start = metrics.start();
         try {
             entityManager.getTransaction().begin();
             entityManager.lock(entity, lockMode);
             entityManager.getTransaction().commit();
+            metrics.success(PersonOperation.LOCK, start, 1);
         } catch (Exception e) {
             if (entityManager.getTransaction().isActive()) {
                 entityManager.getTransaction().rollback();
             }
+            metrics.failure(PersonOperation.LOCK, start, e);
             System.err.println("Failed to lock entity: " + e.getMessage());
         }
     }
 
+    /**
+     * Locks the row of one Person and runs the work in the same transaction, so the lock is held until the work is
+     * done and its changes are committed. A pessimistic lock mode reads the row with {@code SELECT ... FOR UPDATE}
+     * (or {@code FOR SHARE}), which also refreshes a copy this service already manages. The time spent acquiring the
+     * lock is recorded as the lock_wait operation.
+     * <p>
+     * The timeout is passed as the javax.persistence.lock.timeout hint. LOCK_NO_WAIT and LOCK_SKIP_LOCKED become
+     * NOWAIT and SKIP LOCKED on databases that support them, such as MySQL 8. Databases without per-statement
+     * timeouts ignore other values and apply their own lock wait timeout, innodb_lock_wait_timeout on MySQL.
+     *
+     * @param id            the id of the person to lock
+     * @param lockMode      the lock mode, usually PESSIMISTIC_WRITE
+     * @param timeoutMillis the lock timeout in milliseconds, or one of LOCK_NO_WAIT, LOCK_SKIP_LOCKED and
+     *                      LOCK_WAIT_FOREVER
+     * @param work          the work to run on the locked person
+     * @param <R>           the type of the result
+     * @return the result of the work, or null if no such person exists, the row was skipped because it is locked,
+     * or locking or the work failed
+     */
+    public <R> R withLock(Integer id, LockModeType lockMode, int timeoutMillis, Function<Person, R> work) {
+        long start = metrics.start();
+        try {
+            entityManager.getTransaction().begin();
+            Person person = lockPerson(id, lockMode, timeoutMillis);
+            if (person == null) {
+                entityManager.getTransaction().rollback();
+                metrics.success(PersonOperation.WITH_LOCK, start, 0);
+                return null;
+            }
+            R result = work.apply(person);
+            entityManager.getTransaction().commit();
+            indexName(person);
+            retain(person);
+            metrics.success(PersonOperation.WITH_LOCK, start, 1);
+            return result;
+        } catch (Exception e) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            metrics.failure(PersonOperation.WITH_LOCK, start, e);
+            System.err.println("Failed to run the work under a lock on entity " + id + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Person lockPerson(Integer id, LockModeType lockMode, int timeoutMillis) {
+        Map<String, Object> hints = Map.of(LOCK_TIMEOUT_HINT, timeoutMillis);
+        long start = metrics.start();
+        try {
+            Person person = managedPerson(id);
+            if (person != null) {
+                // Locking a managed copy only checks its version, so reload it while taking the lock. The reload
+                // finds no row if SKIP LOCKED skipped it or another transaction deleted it
+                try {
+                    entityManager.refresh(person, lockMode, hints);
+                } catch (EntityNotFoundException e) {
+                    metrics.success(PersonOperation.LOCK_WAIT, start, 0);
+                    return null;
+                }
+            } else {
+                person = entityManager.find(Person.class, id, lockMode, hints);
+            }
+            metrics.success(PersonOperation.LOCK_WAIT, start, person != null ? 1 : 0);
+            return person;
+        } catch (RuntimeException e) {
+            metrics.failure(PersonOperation.LOCK_WAIT, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the Person with the given id if this service's persistence context already manages it, without
+     * querying the second-level cache or the database.
+     *
+     * @param id the id of the person
+     * @return the managed person, or null if the persistence context does not hold it
+     */
+    private Person managedPerson(Integer id) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(Person.class);
+        return (Person) session.getPersistenceContextInternal().getEntity(session.generateEntityKey(id, persister));
+    }
+
+    /**
+     * Claims up to {@code limit} people matching the condition and runs the work on each of them in one transaction,
+     * holding their row locks until it commits. The rows are read with {@code SELECT ... FOR UPDATE SKIP LOCKED}, so
+     * workers on any number of nodes can claim from the same table concurrently: each skips the rows the others
+     * hold instead of waiting for them. The work should change the people so they no longer match the condition,
+     * for example by marking them as processed, or the same rows are claimed again later.
+     * <p>
+     * Databases without SKIP LOCKED, such as H2, wait for locked rows instead. Rows are locked as they are read, so
+     * entities this service already manages must be current; a unit of work of ConcurrentPersonService starts from
+     * an empty persistence context and always is.
+     *
+     * @param where the condition selecting the rows that still need work
+     * @param limit the maximum number of people to claim
+     * @param work  the work to run on each claimed person
+     * @param <R>   the type of the results
+     * @return the results of the work in id order, an empty list if nothing was left to claim, or null if the claim
+     * or the work failed
+     */
+    public <R> List<R> claimBatch(PersonPredicate where, int limit, Function<Person, R> work) {
+        if (limit < 1) {
+            System.err.println("Failed to claim entities: limit must be greater than zero.");
+            return null;
+        }
+        long start = metrics.start();
+        try {
+            entityManager.getTransaction().begin();
+            CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Person> query = builder.createQuery(Person.class);
+            Root<Person> root = query.from(Person.class);
+            query.select(root).where(where.toPredicate(builder, root)).orderBy(builder.asc(root.get("id")));
+            long lockStart = metrics.start();
+            List<Person> claimed;
+            try {
+                claimed = entityManager.createQuery(query)
+                        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                        .setHint(LOCK_TIMEOUT_HINT, LOCK_SKIP_LOCKED)
+                        .setMaxResults(limit)
+                        .getResultList();
+            } catch (RuntimeException e) {
+                metrics.failure(PersonOperation.LOCK_WAIT, lockStart, e);
+                throw e;
+            }
+            metrics.success(PersonOperation.LOCK_WAIT, lockStart, claimed.size());
+            List<R> results = new ArrayList<>(claimed.size());
+            for (Person person : claimed) {
+                results.add(work.apply(person));
+            }
+            entityManager.getTransaction().commit();
+            claimed.forEach(this::indexName);
+            retainAll(claimed);
+            metrics.success(PersonOperation.CLAIM_BATCH, start, claimed.size());
+            return results;
+        } catch (Exception e) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            metrics.failure(PersonOperation.CLAIM_BATCH, start, e);
+            System.err.println("Failed to claim entities: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Refreshes the state of the entity with the current state in the database.
      *
      * @param entity the entity to refresh
      */
     public void refresh(Object entity) {
+        long start = metrics.start();
         try {
             entityManager.getTransaction().begin();
             entityManager.refresh(entity);
             entityManager.getTransaction().commit();
+            metrics.success(PersonOperation.REFRESH, start, 1);
         } catch (Exception e) {
             if (entityManager.getTransaction().isActive()) {
                 entityManager.getTransaction().rollback();
             }
+            metrics.failure(PersonOperation.REFRESH, start, e);
             System.err.println("An error occurred while refreshing the entity: " + e.getMessage() + "\n");
         }
     }
@@ -384,7 +1371,9 @@ public class PersonService {
     }
 
     /**
-     * Updates the attribute of a Person with a new value. The attribute can be 'name' or 'email'.
+     * Updates the attribute of a Person with a new value. The attribute can be 'name' or 'email'. If a concurrent
+     * writer changes the same Person first, the update is reapplied to the new state according to
+     * RetryPolicy.DEFAULT.
      *
      * @param id        The ID of the Person to be updated.
      * @param attribute The attribute of the Person to be updated. This can be 'name' or 'email'.
@@ -392,27 +1381,223 @@ public class PersonService {
      * @return A string message indicating the result of the operation.
      */
     public String updatePersonDb(int id, String attribute, String newValue) {
-        Person person = entityManager.find(Person.class, id);
+        long start = metrics.start();
+        Consumer<Person> mutation;
+        if (attribute.equalsIgnoreCase("name")) {
+            mutation = person -> person.setName(newValue);
+        } else if (attribute.equalsIgnoreCase("email")) {
+            mutation = person -> person.setEmail(newValue);
+        } else {
+            metrics.success(PersonOperation.UPDATE_PERSON_DB, start, 0);
+            return "Invalid attribute. Only 'name' and 'email' can be updated.";
+        }
+        Person person;
+        try {
+            person = applyWithRetry(id, mutation, RetryPolicy.DEFAULT, PersonOperation.UPDATE_PERSON_DB);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            metrics.failure(PersonOperation.UPDATE_PERSON_DB, start, e);
+            return "The update of the Person was interrupted.";
+        } catch (Exception e) {
+            metrics.failure(PersonOperation.UPDATE_PERSON_DB, start, e);
+            return "An error occurred while updating the Person: " + e.getMessage();
+        }
         if (person == null) {
+            metrics.success(PersonOperation.UPDATE_PERSON_DB, start, 0);
             return "No Person found with ID " + id + ". Please check the database to ensure the entity has been persisted.";
         }
+        metrics.success(PersonOperation.UPDATE_PERSON_DB, start, 1);
+        return "Person updated successfully.";
+    }
+
+    /**
+     * Applies a change to one Person as a unit of work that survives concurrent writers. Each attempt reads the
+     * person in a new transaction, applies the mutation and commits. When the commit loses an optimistic locking
+     * conflict because another writer updated the row first, the stale entity is detached, the thread waits for a
+     * jittered exponential backoff and the mutation is applied again to a fresh read. The mutation may therefore run
+     * more than once and should only change the person it is given.
+     *
+     * @param id       the id of the person to update
+     * @param mutation the change to apply to the person
+     * @param policy   how many attempts to make and how long to wait between them
+     * @return the updated person, or null if no such person exists or the update failed
+     */
+    public Person updateWithRetry(Integer id, Consumer<Person> mutation, RetryPolicy policy) {
+        long start = metrics.start();
+        try {
+            Person person = applyWithRetry(id, mutation, policy, PersonOperation.UPDATE_WITH_RETRY);
+            if (person == null) {
+                System.err.println("Failed to update entity: No entity with id " + id + " found.");
+            }
+            metrics.success(PersonOperation.UPDATE_WITH_RETRY, start, person != null ? 1 : 0);
+            return person;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            metrics.failure(PersonOperation.UPDATE_WITH_RETRY, start, e);
+            System.err.println("Interrupted while waiting to retry the update of entity " + id + ".");
+            return null;
+        } catch (Exception e) {
+            metrics.failure(PersonOperation.UPDATE_WITH_RETRY, start, e);
+            System.err.println("Failed to update entity: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Person applyWithRetry(Integer id, Consumer<Person> mutation, RetryPolicy policy,
+                                  PersonOperation operation) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            Person person = null;
+            try {
+                entityManager.getTransaction().begin();
+                person = entityManager.find(Person.class, id);
+                if (person != null) {
+                    mutation.accept(person);
+                }
+                entityManager.getTransaction().commit();
+                indexName(person);
+                retain(person);
+                return person;
+            } catch (RuntimeException e) {
+                if (entityManager.getTransaction().isActive()) {
+                    entityManager.getTransaction().rollback();
+                }
+                if (!isOptimisticLockConflict(e)) {
+                    throw e;
+                }
+                // find would hand out the stale copy again, so the next attempt has to read the row anew
+                if (person != null && entityManager.contains(person)) {
+                    entityManager.detach(person);
+                    recentlyUsed.remove(id);
+                }
+                if (attempt >= policy.maxAttempts()) {
+                    throw e;
+                }
+                metrics.conflict(operation);
+                TimeUnit.NANOSECONDS.sleep(policy.backoffNanos(attempt));
+            }
+        }
+    }
+
+    private static boolean isOptimisticLockConflict(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets an attribute of every Person matching the condition with a single bulk UPDATE statement, instead of
+     * loading and modifying each entity. The version column is incremented in the same statement, so concurrent
+     * optimistic updates of the affected rows still fail. Hibernate evicts Person from the second-level cache and
+     * invalidates cached queries after a bulk statement; the persistence context is cleared, because the entities
+     * it manages may no longer match the database.
+     * <p>
+     * When a name index is attached and names are updated, the matching ids are first selected and locked with
+     * PESSIMISTIC_WRITE, and only those rows are updated, by id. Rows that start matching in between are neither
+     * updated nor indexed, so the index and the table agree.
+     *
+     * @param where     the condition selecting the rows to update
+     * @param attribute the attribute to update. This can be 'name' or 'email'.
+     * @param newValue  the new value for the attribute
+     * @return the number of rows updated, or 0 if the update failed
+     */
+    public int updateWhere(PersonPredicate where, String attribute, String newValue) {
+        if (!attribute.equalsIgnoreCase("name") && !attribute.equalsIgnoreCase("email")) {
+            System.err.println("Invalid attribute. Only 'name' and 'email' can be updated.");
+            return 0;
+        }
+        long start = metrics.start();
+        String attributeName = attribute.toLowerCase(Locale.ROOT);
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        int rows;
+        List<Integer> renamedIds = List.of();
         try {
             entityManager.getTransaction().begin();
-            if (attribute.equalsIgnoreCase("name")) {
-                person.setName(newValue);
-            } else if (attribute.equalsIgnoreCase("email")) {
-                person.setEmail(newValue);
+            if (nameIndex != null && attributeName.equals("name")) {
+                CriteriaQuery<Integer> select = builder.createQuery(Integer.class);
+                Root<Person> selectRoot = select.from(Person.class);
+                select.select(selectRoot.get("id")).where(where.toPredicate(builder, selectRoot));
+                renamedIds = entityManager.createQuery(select)
+                        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                        .getResultList();
+                rows = 0;
+                for (int from = 0; from < renamedIds.size(); from += IN_LIST_CHUNK) {
+                    List<Integer> chunk = renamedIds.subList(from, Math.min(from + IN_LIST_CHUNK, renamedIds.size()));
+                    CriteriaUpdate<Person> update = bulkUpdate(builder, attributeName, newValue);
+                    Root<Person> root = update.getRoot();
+                    update.where(root.get("id").in(chunk));
+                    rows += entityManager.createQuery(update).executeUpdate();
+                }
             } else {
-                return "Invalid attribute. Only 'name' and 'email' can be updated.";
+                CriteriaUpdate<Person> update = bulkUpdate(builder, attributeName, newValue);
+                update.where(where.toPredicate(builder, update.getRoot()));
+                rows = entityManager.createQuery(update).executeUpdate();
             }
             entityManager.getTransaction().commit();
         } catch (Exception e) {
             if (entityManager.getTransaction().isActive()) {
                 entityManager.getTransaction().rollback();
             }
-            return "An error occurred while updating the Person: " + e.getMessage();
+            metrics.failure(PersonOperation.UPDATE_WHERE, start, e);
+            System.err.println("Failed to update entities: " + e.getMessage());
+            return 0;
         }
-        return "Person updated successfully.";
+        clearPersistenceContext();
+        for (Integer id : renamedIds) {
+            nameIndex.put(id, newValue);
+        }
+        metrics.success(PersonOperation.UPDATE_WHERE, start, rows);
+        return rows;
+    }
+
+    /**
+     * Creates a bulk update of Person setting the attribute and incrementing the version, without a condition yet.
+     */
+    private static CriteriaUpdate<Person> bulkUpdate(CriteriaBuilder builder, String attributeName, String newValue) {
+        CriteriaUpdate<Person> update = builder.createCriteriaUpdate(Person.class);
+        Root<Person> root = update.from(Person.class);
+        update.set(root.<String>get(attributeName), newValue);
+        update.set(root.<Integer>get("version"), builder.sum(root.<Integer>get("version"), 1));
+        return update;
+    }
+
+    /**
+     * Removes every Person with one of the given ids using bulk DELETE statements, one per chunk of ids, in a single
+     * transaction. Rows are deleted regardless of their version. Hibernate evicts Person from the second-level cache
+     * and invalidates cached queries after a bulk statement; the persistence context is cleared, because it may
+     * still manage some of the removed entities.
+     *
+     * @param ids the ids of the people to remove
+     * @return the number of rows deleted, or 0 if the removal failed
+     */
+    public int removeAll(Collection<Integer> ids) {
+        long start = metrics.start();
+        List<Integer> idList = new ArrayList<>(ids);
+        int rows = 0;
+        try {
+            entityManager.getTransaction().begin();
+            for (int from = 0; from < idList.size(); from += IN_LIST_CHUNK) {
+                rows += entityManager.createNamedQuery("removePeopleByIds")
+                        .setParameter("ids", idList.subList(from, Math.min(from + IN_LIST_CHUNK, idList.size())))
+                        .executeUpdate();
+            }
+            entityManager.getTransaction().commit();
+        } catch (Exception e) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            metrics.failure(PersonOperation.REMOVE_ALL, start, e);
+            System.err.println("Failed to remove entities: " + e.getMessage());
+            return 0;
+        }
+        clearPersistenceContext();
+        if (nameIndex != null) {
+            idList.forEach(nameIndex::remove);
+        }
+        metrics.success(PersonOperation.REMOVE_ALL, start, rows);
+        return rows;
     }
 
     /**
@@ -494,4 +1679,79 @@ public class PersonService {
             System.err.println("Failed to modify entity: " + e.getMessage());
         }
     }
+
+    /**
+     * Updates a person held in a PersonStore. Unlike the list version, the person is found by a hash lookup on the
+     * id or on the name, ignoring case, instead of a scan.
+     *
+     * @param people    The store holding the person to be updated.
+     * @param id        The ID of the person to be updated. If this is null, the method will search by name.
+     * @param name      The name of the person to be updated. This is used if the id is null.
+     * @param attribute The attribute of the person to be updated (should be "name" or "email").
+     * @param newValue  The new value for the specified attribute.
+     * @return A message indicating the result of the update operation.
+     */
+    public String updatePersonObj(PersonStore people, Integer id, String name, String attribute, String newValue) {
+        PersonStore.Cursor person = people.cursor();
+        if (id != null ? !person.find(id) : !person.findByName(name)) {
+            return id != null ? "No Person found with ID " + id + " in memory."
+                    : "No Person found with name " + name + " in memory.";
+        }
+        try {
+            if (attribute.equalsIgnoreCase("name")) {
+                person.setName(newValue);
+            } else if (attribute.equalsIgnoreCase("email")) {
+                person.setEmail(newValue);
+            } else {
+                return "Invalid attribute. Only 'name' and 'email' can be updated with this method.";
+            }
+        } catch (Exception e) {
+            return "An error occurred while updating the Person in memory: " + e.getMessage();
+        }
+        return "Person updated in memory successfully.";
+    }
+
+    /**
+     * Modifies the ID of a person held in a PersonStore. People in a store are keyed by their ID, so it can be
+     * changed to another free ID but not set to null.
+     *
+     * @param people   The store holding the person whose ID is to be modified.
+     * @param id       The current ID of the person to be modified.
+     * @param response The response indicating how to modify the ID (should be "null" or "new").
+     * @param newId    The new ID for the person, if the response is "new".
+     */
+    public void modifyPersonId(PersonStore people, int id, String response, Integer newId) {
+        if (!people.contains(id)) {
+            System.err.println("No entity with ID " + id + " found." + "\n");
+            return;
+        }
+        if (response.equalsIgnoreCase("null")) {
+            System.err.println("People in a PersonStore are keyed by their ID, which cannot be set to null.");
+        } else if (response.equalsIgnoreCase("new")) {
+            if (newId == null) {
+                System.err.println("New ID is null. Please enter a valid ID.");
+            } else if (people.changeId(id, newId)) {
+                System.out.println("ID set to " + newId + " successfully.");
+            } else {
+                System.err.println("Failed to modify entity: ID " + newId + " is already in use.");
+            }
+        } else {
+            System.err.println("Invalid response. Please enter 'null' or 'new'.");
+        }
+    }
+
+    /**
+     * Records that the session flushed, which may have made the dirty untracked entities evictable.
+     */
+    private static final class FlushListener extends BaseSessionEventListener {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private transient boolean flushed;
+
+        @Override
+        public void flushEnd(int numberOfEntities, int numberOfCollections) {
+            flushed = true;
+        }
+    }
 }
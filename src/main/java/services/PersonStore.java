@@ -0,0 +1,547 @@
+package services;
+
+import domain.Person;
+import domain.PersonView;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory working set of people for hot-path lookups by id and by name, sized for tens of millions of people.
+ * Nothing is kept per person as an object: ids and the addresses of names and emails live in primitive arrays, and
+ * the names and emails themselves are stored as UTF-8 in direct buffers outside the heap. The garbage collector has
+ * a few large arrays to look at instead of three objects per person, and lookups never box an id.
+ * <p>
+ * Ids are found through an open-addressing hash table from int id to slot, names through a hash index on the
+ * case-insensitive name whose buckets chain the slots of the people sharing them. People are read and changed
+ * through a Cursor, a reusable flyweight that only decodes the fields it is asked for.
+ * <p>
+ * Changed names and emails are appended to the buffers, and the space of the old values is reclaimed by compacting
+ * the buffers once it outgrows the space in use. A store is not thread-safe.
+ */
+public class PersonStore {
+    // Addresses hold the chunk index above the offset; chunks grow by doubling up to MAX_CHUNK_SIZE
+    private static final int CHUNK_SHIFT = 26;
+    private static final int MAX_CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+    private static final int MIN_COMPACTION_GARBAGE = 1 << 20;
+    // Slots are stored plus one in the hash tables and name chains, so the zero-filled arrays mean empty
+    private static final int NO_SLOT = 0;
+    private static final int NO_VALUE = -1;
+
+    private int[] idKeys;
+    private int[] idSlots;
+    private int[] nameHeads;
+    private int mask;
+    private int nameMask;
+
+    private int[] ids;
+    private int[] nameHashes;
+    private int[] nextByName;
+    private long[] nameAddresses;
+    private int[] nameLengths;
+    private long[] emailAddresses;
+    private int[] emailLengths;
+    private int size;
+
+    private List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer chunk;
+    private long offHeapBytes;
+    private long usedBytes;
+    private long garbageBytes;
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Creates an empty store.
+     */
+    public PersonStore() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty store sized for the given number of people, so it does not have to grow while they are added.
+     *
+     * @param expectedSize the expected number of people
+     */
+    public PersonStore(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("The expected size must not be negative.");
+        }
+        allocate(Math.max(16, Integer.highestOneBit(Math.max(1, expectedSize - 1)) << 1));
+    }
+
+    /**
+     * Adds a person, or replaces the name and email of the person with the same id.
+     *
+     * @param person the person to add
+     * @throws IllegalArgumentException if the person has no id
+     */
+    public void put(Person person) {
+        if (person.getId() == null) {
+            throw new IllegalArgumentException("A person without an id cannot be stored.");
+        }
+        put(person.getId(), person.getName(), person.getEmail());
+    }
+
+    /**
+     * Adds a person, or replaces the name and email of the person with the same id.
+     *
+     * @param id    the id of the person
+     * @param name  the name, may be null
+     * @param email the email, may be null
+     */
+    public void put(int id, String name, String email) {
+        int index = indexOf(id);
+        if (index >= 0) {
+            int slot = idSlots[index] - 1;
+            setName(slot, name);
+            setEmail(slot, email);
+            compactIfWasteful();
+            return;
+        }
+        if (size == ids.length) {
+            grow();
+            index = indexOf(id);
+        }
+        int slot = size++;
+        ids[slot] = id;
+        idKeys[~index] = id;
+        idSlots[~index] = slot + 1;
+        nameLengths[slot] = NO_VALUE;
+        emailLengths[slot] = NO_VALUE;
+        setName(slot, name);
+        setEmail(slot, email);
+    }
+
+    /**
+     * Removes a person. The last person in the store takes over the freed slot.
+     *
+     * @param id the id of the person to remove
+     * @return true if the person was found and removed
+     */
+    public boolean remove(int id) {
+        int index = indexOf(id);
+        if (index < 0) {
+            return false;
+        }
+        int slot = idSlots[index] - 1;
+        deleteIndex(index);
+        unlinkName(slot);
+        release(nameLengths[slot]);
+        release(emailLengths[slot]);
+        int last = --size;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            nameHashes[slot] = nameHashes[last];
+            nameAddresses[slot] = nameAddresses[last];
+            nameLengths[slot] = nameLengths[last];
+            emailAddresses[slot] = emailAddresses[last];
+            emailLengths[slot] = emailLengths[last];
+            nextByName[slot] = nextByName[last];
+            idSlots[indexOf(ids[slot])] = slot + 1;
+            if (nameLengths[slot] != NO_VALUE) {
+                replaceLink(nameHashes[slot] & nameMask, last, slot + 1);
+            }
+        }
+        compactIfWasteful();
+        return true;
+    }
+
+    /**
+     * Moves a person to another id.
+     *
+     * @param id    the current id of the person
+     * @param newId the new id
+     * @return true if the id was changed, false if no person has the current id or another person has the new one
+     */
+    public boolean changeId(int id, int newId) {
+        int index = indexOf(id);
+        if (index < 0) {
+            return false;
+        }
+        if (id == newId) {
+            return true;
+        }
+        if (indexOf(newId) >= 0) {
+            return false;
+        }
+        int slot = idSlots[index] - 1;
+        deleteIndex(index);
+        int newIndex = ~indexOf(newId);
+        idKeys[newIndex] = newId;
+        idSlots[newIndex] = slot + 1;
+        ids[slot] = newId;
+        return true;
+    }
+
+    /**
+     * Checks if a person with the given id is stored.
+     *
+     * @param id the id to look for
+     * @return true if the person is stored
+     */
+    public boolean contains(int id) {
+        return indexOf(id) >= 0;
+    }
+
+    /**
+     * Returns the number of people stored.
+     *
+     * @return the number of people
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the size of the direct buffers holding the names and emails, including free and reclaimable space.
+     *
+     * @return the number of bytes allocated outside the heap
+     */
+    public long offHeapBytes() {
+        return offHeapBytes;
+    }
+
+    /**
+     * Creates a cursor over this store, positioned on no person.
+     *
+     * @return a new cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Visits every person with a single cursor, which must not be kept or used after the action returns.
+     *
+     * @param action the action to perform for each person
+     */
+    public void forEach(Consumer<Cursor> action) {
+        Cursor cursor = new Cursor();
+        for (int slot = 0; slot < size; slot++) {
+            cursor.slot = slot;
+            action.accept(cursor);
+        }
+    }
+
+    /**
+     * A flyweight view of one stored person, moved from person to person with find and findByName. Fields are
+     * decoded from the off-heap buffers each time they are read. A cursor is invalidated when a person is removed
+     * from the store.
+     */
+    public final class Cursor {
+        private int slot = -1;
+        private String name;
+        private int nameHash;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to the person with the given id.
+         *
+         * @param id the id to look for
+         * @return true if the person was found; otherwise the cursor is positioned on no person
+         */
+        public boolean find(int id) {
+            int index = indexOf(id);
+            slot = index >= 0 ? idSlots[index] - 1 : -1;
+            return slot >= 0;
+        }
+
+        /**
+         * Moves to the first person with the given name, ignoring case.
+         *
+         * @param name the name to look for
+         * @return true if a person was found; otherwise the cursor is positioned on no person
+         */
+        public boolean findByName(String name) {
+            if (name == null) {
+                slot = -1;
+                return false;
+            }
+            this.name = name;
+            this.nameHash = nameHash(name);
+            return seekName(nameHeads[nameHash & nameMask]);
+        }
+
+        /**
+         * Moves to the next person with the name given to the last findByName.
+         *
+         * @return true if another person was found; otherwise the cursor is positioned on no person
+         */
+        public boolean nextByName() {
+            if (slot < 0 || name == null) {
+                return false;
+            }
+            return seekName(nextByName[slot]);
+        }
+
+        private boolean seekName(int next) {
+            for (int candidate = next - 1; candidate >= 0; candidate = nextByName[candidate] - 1) {
+                if (nameHashes[candidate] == nameHash && nameLengths[candidate] != NO_VALUE
+                        && read(nameAddresses[candidate], nameLengths[candidate]).equalsIgnoreCase(name)) {
+                    slot = candidate;
+                    return true;
+                }
+            }
+            slot = -1;
+            return false;
+        }
+
+        public int getId() {
+            return ids[position()];
+        }
+
+        public String getName() {
+            int current = position();
+            return read(nameAddresses[current], nameLengths[current]);
+        }
+
+        public String getEmail() {
+            int current = position();
+            return read(emailAddresses[current], emailLengths[current]);
+        }
+
+        public void setName(String name) {
+            PersonStore.this.setName(position(), name);
+            compactIfWasteful();
+        }
+
+        public void setEmail(String email) {
+            PersonStore.this.setEmail(position(), email);
+            compactIfWasteful();
+        }
+
+        /**
+         * Copies the person into a new Person. The store does not keep versions, so the copy is meant to be read or
+         * persisted as a new entity, not merged.
+         *
+         * @return a new Person with the id, name and email of the current person
+         */
+        public Person toPerson() {
+            return new Person(getId(), getName(), getEmail());
+        }
+
+        /**
+         * Copies the person into a PersonView.
+         *
+         * @return a view of the current person
+         */
+        public PersonView toView() {
+            return new PersonView(getId(), getName(), getEmail());
+        }
+
+        private int position() {
+            if (slot < 0) {
+                throw new IllegalStateException("The cursor is not positioned on a person.");
+            }
+            return slot;
+        }
+    }
+
+    private void setName(int slot, String name) {
+        unlinkName(slot);
+        release(nameLengths[slot]);
+        nameLengths[slot] = NO_VALUE;
+        if (name != null) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            nameAddresses[slot] = write(bytes);
+            nameLengths[slot] = bytes.length;
+            nameHashes[slot] = nameHash(name);
+            int bucket = nameHashes[slot] & nameMask;
+            nextByName[slot] = nameHeads[bucket];
+            nameHeads[bucket] = slot + 1;
+        }
+    }
+
+    private void setEmail(int slot, String email) {
+        release(emailLengths[slot]);
+        emailLengths[slot] = NO_VALUE;
+        if (email != null) {
+            byte[] bytes = email.getBytes(StandardCharsets.UTF_8);
+            emailAddresses[slot] = write(bytes);
+            emailLengths[slot] = bytes.length;
+        }
+    }
+
+    private void unlinkName(int slot) {
+        if (nameLengths[slot] != NO_VALUE) {
+            replaceLink(nameHashes[slot] & nameMask, slot, nextByName[slot]);
+        }
+    }
+
+    /**
+     * Replaces the link to a slot in the name chain of a bucket.
+     */
+    private void replaceLink(int bucket, int slot, int replacement) {
+        if (nameHeads[bucket] == slot + 1) {
+            nameHeads[bucket] = replacement;
+            return;
+        }
+        for (int candidate = nameHeads[bucket] - 1; candidate >= 0; candidate = nextByName[candidate] - 1) {
+            if (nextByName[candidate] == slot + 1) {
+                nextByName[candidate] = replacement;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the id in the id table, or the bitwise complement of the free index to insert it at.
+     */
+    private int indexOf(int id) {
+        for (int index = mix(id) & mask; ; index = (index + 1) & mask) {
+            if (idSlots[index] == NO_SLOT) {
+                return ~index;
+            }
+            if (idKeys[index] == id) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Empties an index of the id table, shifting back the entries that probed past it, so no tombstones are needed.
+     */
+    private void deleteIndex(int index) {
+        int gap = index;
+        for (int next = (index + 1) & mask; idSlots[next] != NO_SLOT; next = (next + 1) & mask) {
+            int home = mix(idKeys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                idKeys[gap] = idKeys[next];
+                idSlots[gap] = idSlots[next];
+                gap = next;
+            }
+        }
+        idSlots[gap] = NO_SLOT;
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        nameHashes = new int[capacity];
+        nextByName = new int[capacity];
+        nameAddresses = new long[capacity];
+        nameLengths = new int[capacity];
+        emailAddresses = new long[capacity];
+        emailLengths = new int[capacity];
+        rehash(capacity);
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        nameHashes = Arrays.copyOf(nameHashes, capacity);
+        nextByName = Arrays.copyOf(nextByName, capacity);
+        nameAddresses = Arrays.copyOf(nameAddresses, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        emailAddresses = Arrays.copyOf(emailAddresses, capacity);
+        emailLengths = Arrays.copyOf(emailLengths, capacity);
+        rehash(capacity);
+    }
+
+    /**
+     * Rebuilds the id table, kept at most half full, and the name index for the given capacity.
+     */
+    private void rehash(int capacity) {
+        idKeys = new int[capacity * 2];
+        idSlots = new int[capacity * 2];
+        mask = capacity * 2 - 1;
+        nameHeads = new int[capacity];
+        nameMask = capacity - 1;
+        // Linking backwards keeps every name chain in slot order
+        for (int slot = size - 1; slot >= 0; slot--) {
+            int index = ~indexOf(ids[slot]);
+            idKeys[index] = ids[slot];
+            idSlots[index] = slot + 1;
+            if (nameLengths[slot] != NO_VALUE) {
+                int bucket = nameHashes[slot] & nameMask;
+                nextByName[slot] = nameHeads[bucket];
+                nameHeads[bucket] = slot + 1;
+            }
+        }
+    }
+
+    private long write(byte[] bytes) {
+        if (bytes.length > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("A value of " + bytes.length + " bytes is too large to be stored.");
+        }
+        if (chunk == null || chunk.remaining() < bytes.length) {
+            int chunkSize = (int) Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, offHeapBytes));
+            chunk = ByteBuffer.allocateDirect(Math.max(chunkSize, bytes.length));
+            chunks.add(chunk);
+            offHeapBytes += chunk.capacity();
+        }
+        long address = ((long) (chunks.size() - 1) << CHUNK_SHIFT) | chunk.position();
+        chunk.put(bytes);
+        usedBytes += bytes.length;
+        return address;
+    }
+
+    private String read(long address, int length) {
+        if (length == NO_VALUE) {
+            return null;
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        chunks.get((int) (address >>> CHUNK_SHIFT)).get((int) (address & (MAX_CHUNK_SIZE - 1)), scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void release(int length) {
+        if (length != NO_VALUE) {
+            usedBytes -= length;
+            garbageBytes += length;
+        }
+    }
+
+    /**
+     * Copies the names and emails in use into new buffers once the space of replaced and removed values outgrows
+     * them, letting the old buffers be freed.
+     */
+    private void compactIfWasteful() {
+        if (garbageBytes < MIN_COMPACTION_GARBAGE || garbageBytes < usedBytes) {
+            return;
+        }
+        List<ByteBuffer> old = chunks;
+        chunks = new ArrayList<>();
+        chunk = null;
+        offHeapBytes = 0;
+        usedBytes = 0;
+        garbageBytes = 0;
+        for (int slot = 0; slot < size; slot++) {
+            nameAddresses[slot] = move(old, nameAddresses[slot], nameLengths[slot]);
+            emailAddresses[slot] = move(old, emailAddresses[slot], emailLengths[slot]);
+        }
+    }
+
+    private long move(List<ByteBuffer> from, long address, int length) {
+        if (length == NO_VALUE) {
+            return 0;
+        }
+        byte[] bytes = new byte[length];
+        from.get((int) (address >>> CHUNK_SHIFT)).get((int) (address & (MAX_CHUNK_SIZE - 1)), bytes, 0, length);
+        return write(bytes);
+    }
+
+    /**
+     * Hashes a name so that names equal ignoring case, as String.equalsIgnoreCase compares them, hash the same.
+     */
+    private static int nameHash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        return mix(hash);
+    }
+
+    private static int mix(int value) {
+        int hash = value * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,200 @@
+package services;
+
+import org.hibernate.transform.ResultTransformer;
+
+import java.io.Serial;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Turns the rows of a native query into instances of a record class. Each column is matched to the record component
+ * of the same name, ignoring case and underscores, so a column named first_name fills a component named firstName;
+ * columns without a matching component are ignored and components without a column are left null (or zero).
+ * <p>
+ * The canonical constructor and the component names of each record class are looked up once and cached, and the
+ * column positions are resolved from the first row of a query, so later rows only copy values into an argument
+ * array. One transformer serves a single query and must not be shared between queries.
+ *
+ * @param <R> the record type
+ */
+class RecordResultTransformer<R extends Record> implements ResultTransformer {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private static final ClassValue<RecordShape> SHAPES = new ClassValue<>() {
+        @Override
+        protected RecordShape computeValue(Class<?> type) {
+            return new RecordShape(type);
+        }
+    };
+
+    // ResultTransformer is Serializable, but a transformer only lives as long as its query and is never serialized
+    private final transient RecordShape shape;
+    // column index of each record component, or -1 if no column fills it
+    private int[] columns;
+
+    RecordResultTransformer(Class<R> recordType) {
+        this.shape = SHAPES.get(recordType);
+    }
+
+    @Override
+    public Object transformTuple(Object[] tuple, String[] aliases) {
+        if (columns == null) {
+            columns = shape.columnsOf(aliases);
+        }
+        Object[] arguments = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            Object value = columns[i] >= 0 ? tuple[columns[i]] : null;
+            arguments[i] = convert(value, shape.types[i]);
+        }
+        try {
+            return (Object) shape.constructor.invokeExact(arguments);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create " + shape.name + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public List transformList(List collection) {
+        return collection;
+    }
+
+    /**
+     * Converts a column value to the type of a record component, widening or narrowing numbers the way JDBC drivers
+     * report them (BIGINT as Long or BigInteger, DECIMAL as BigDecimal) and replacing null with zero for primitives.
+     * Conversions to integral types and to BigDecimal are exact: a fractional, out-of-range or non-finite value is
+     * rejected rather than truncated or wrapped. Conversions to double and float round to the nearest value, as
+     * ResultSet.getDouble does.
+     *
+     * @throws IllegalArgumentException if the value cannot be represented exactly in the component type
+     */
+    private static Object convert(Object value, Class<?> type) {
+        if (value == null) {
+            return type.isPrimitive() ? defaultValue(type) : null;
+        }
+        if (type.isInstance(value) || !(value instanceof Number number)) {
+            return value;
+        }
+        if (type == double.class || type == Double.class) {
+            return number.doubleValue();
+        } else if (type == float.class || type == Float.class) {
+            return number.floatValue();
+        }
+        if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            // The common integral cases, without a BigDecimal per row; values that do not fit take the exact path
+            long integral = number.longValue();
+            if (type == long.class || type == Long.class) {
+                return integral;
+            } else if ((type == int.class || type == Integer.class) && (int) integral == integral) {
+                return (int) integral;
+            }
+        }
+        BigDecimal decimal = toBigDecimal(number, type);
+        try {
+            if (type == int.class || type == Integer.class) {
+                return decimal.intValueExact();
+            } else if (type == long.class || type == Long.class) {
+                return decimal.longValueExact();
+            } else if (type == short.class || type == Short.class) {
+                return decimal.shortValueExact();
+            } else if (type == byte.class || type == Byte.class) {
+                return decimal.byteValueExact();
+            } else if (type == BigInteger.class) {
+                return decimal.toBigIntegerExact();
+            } else if (type == BigDecimal.class) {
+                return decimal;
+            }
+        } catch (ArithmeticException e) {
+            throw cannotConvert(number, type, e);
+        }
+        return value;
+    }
+
+    private static BigDecimal toBigDecimal(Number number, Class<?> type) {
+        if (number instanceof BigDecimal decimal) {
+            return decimal;
+        } else if (number instanceof BigInteger integer) {
+            return new BigDecimal(integer);
+        } else if ((number instanceof Double || number instanceof Float) && !Double.isFinite(number.doubleValue())) {
+            throw cannotConvert(number, type, null);
+        }
+        // Through the decimal string, so a float keeps the value it prints as rather than its binary expansion
+        return new BigDecimal(number.toString());
+    }
+
+    private static IllegalArgumentException cannotConvert(Number number, Class<?> type, ArithmeticException cause) {
+        return new IllegalArgumentException("Cannot convert the column value " + number + " to "
+                + type.getSimpleName() + " without losing information.", cause);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == char.class) {
+            return '\0';
+        }
+        return convert(0, type);
+    }
+
+    private static String normalize(String name) {
+        return name.replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The canonical constructor and component names of a record class.
+     */
+    private static final class RecordShape {
+        private final String name;
+        private final MethodHandle constructor;
+        private final Class<?>[] types;
+        private final Map<String, Integer> componentIndexes = new HashMap<>();
+
+        RecordShape(Class<?> type) {
+            if (!type.isRecord()) {
+                throw new IllegalArgumentException(type.getName() + " is not a record class.");
+            }
+            name = type.getName();
+            RecordComponent[] components = type.getRecordComponents();
+            types = new Class<?>[components.length];
+            for (int i = 0; i < components.length; i++) {
+                types[i] = components[i].getType();
+                componentIndexes.put(normalize(components[i].getName()), i);
+            }
+            try {
+                Constructor<?> canonical = type.getDeclaredConstructor(types);
+                canonical.setAccessible(true);
+                constructor = MethodHandles.lookup().unreflectConstructor(canonical)
+                        .asSpreader(Object[].class, types.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+                throw new IllegalArgumentException("Cannot access the canonical constructor of " + name + ".", e);
+            }
+        }
+
+        int[] columnsOf(String[] aliases) {
+            int[] columns = new int[types.length];
+            Arrays.fill(columns, -1);
+            for (int column = 0; column < aliases.length; column++) {
+                Integer component = aliases[column] != null ? componentIndexes.get(normalize(aliases[column])) : null;
+                if (component != null && columns[component] < 0) {
+                    columns[component] = column;
+                }
+            }
+            return columns;
+        }
+    }
+}
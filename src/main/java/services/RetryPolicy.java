@@ -0,0 +1,44 @@
+package services;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How PersonService.updateWithRetry retries a unit of work that lost an optimistic locking conflict. The wait
+ * before retry n is a random duration between zero and initialBackoff * 2^(n-1), capped at maxBackoff, so writers
+ * that collided once do not collide again in lockstep.
+ *
+ * @param maxAttempts    the maximum number of attempts, including the first one
+ * @param initialBackoff the upper bound of the wait before the first retry
+ * @param maxBackoff     the upper bound of any wait
+ */
+public record RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+
+    /**
+     * Five attempts, waiting up to 5 ms before the first retry and never more than 200 ms.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(5, Duration.ofMillis(5), Duration.ofMillis(200));
+
+    public RetryPolicy {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be greater than zero.");
+        }
+        if (initialBackoff.isNegative() || maxBackoff.compareTo(initialBackoff) < 0) {
+            throw new IllegalArgumentException("Backoffs must satisfy 0 <= initialBackoff <= maxBackoff.");
+        }
+    }
+
+    /**
+     * Picks the wait before the given retry.
+     *
+     * @param retry the number of the retry, starting at 1
+     * @return the time to wait in nanoseconds
+     */
+    long backoffNanos(int retry) {
+        long ceiling = initialBackoff.toNanos() << Math.min(retry - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoff.toNanos()) {
+            ceiling = maxBackoff.toNanos();
+        }
+        return ceiling == 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
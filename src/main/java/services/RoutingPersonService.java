@@ -0,0 +1,573 @@
+package services;
+
+import domain.Person;
+import domain.PersonView;
+import domain.ReplicationHeartbeat;
+import metrics.PersonServiceMetrics;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Splits the Person traffic between a primary database and an asynchronously replicated read replica, each with
+ * its own EntityManagerFactory. Writes always go to the primary; read-only operations go to the replica unless it
+ * is unavailable, lags too far behind or may not have applied a write the caller made yet, in which case they are
+ * read from the primary instead. Like ConcurrentPersonService, every call runs in a short-lived EntityManager, so
+ * the returned entities are detached.
+ * <p>
+ * Replica lag is measured with a heartbeat: a monitor thread rewrites a ReplicationHeartbeat row on the primary at
+ * a fixed interval and reads it back from the replica. The time in the replica's copy is the point up to which the
+ * replica has applied every primary commit, and the difference to the current time is its lag. The heartbeat time
+ * comes from this process's clock, so the service that writes it should be the one that routes on it. A replica
+ * that fails the check, or fails a read, is treated as unavailable until the next successful check.
+ * <p>
+ * Read-your-writes consistency is kept per Session, opened with openSession and typically held for one user's
+ * session or request. After a write, a session reads from the primary what the replica may not have applied yet,
+ * either every read until the replica has caught up with the write (SESSION), or only the people the session
+ * wrote, whose versions are checked against the replica's copy (VERSION). Reads are recorded in a separate
+ * PersonServiceMetrics per route, and the service counts why each read was routed where it went.
+ */
+public class RoutingPersonService implements AutoCloseable {
+    private static final int HEARTBEAT_ID = 1;
+    private static final long NOT_REPLICATED = Long.MIN_VALUE;
+
+    /**
+     * How a session keeps reading its own writes while the replica has not applied them yet.
+     */
+    public enum ReadYourWrites {
+        /**
+         * Every read of the session goes to the primary until the replica has applied all its writes. Nothing the
+         * session wrote can be missing from a read, at the cost of sending all its reads to the primary for about
+         * the replica lag after each write.
+         */
+        SESSION,
+        /**
+         * Only reads that return people the session wrote go to the primary, when the replica's copy is older than
+         * the version the session wrote. A name query on the replica can still miss a person the session inserted
+         * or renamed into its results, and bulk updates and removals fall back to SESSION behaviour, since the
+         * versions they write are not known.
+         */
+        VERSION
+    }
+
+    private final EntityManagerFactory primary;
+    private final EntityManagerFactory replica;
+    private final ReadYourWrites readYourWrites;
+    private final long maxLagMillis;
+    private final long heartbeatIntervalNanos;
+    private final Thread monitor;
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong stickyReads = new AtomicLong();
+    private final AtomicLong staleReads = new AtomicLong();
+    private final AtomicLong fallbackReads = new AtomicLong();
+    private volatile boolean running = true;
+    private volatile boolean replicaAvailable;
+    // The heartbeat time last read from the replica: every primary commit before it has been applied there
+    private volatile long replicatedMillis = NOT_REPLICATED;
+    private volatile PersonNameIndex nameIndex;
+    private volatile PersonServiceMetrics primaryMetrics;
+    private volatile PersonServiceMetrics replicaMetrics;
+
+    /**
+     * Creates the service and starts the thread that monitors the replica.
+     *
+     * @param primary           the factory of the EntityManagers of the primary database
+     * @param replica           the factory of the EntityManagers of the read replica
+     * @param readYourWrites    how sessions read their own writes
+     * @param maxLag            the lag above which reads go to the primary
+     * @param heartbeatInterval how often the heartbeat is written and the replica checked
+     */
+    public RoutingPersonService(EntityManagerFactory primary, EntityManagerFactory replica,
+                                ReadYourWrites readYourWrites, Duration maxLag, Duration heartbeatInterval) {
+        if (heartbeatInterval.isNegative() || heartbeatInterval.isZero()) {
+            throw new IllegalArgumentException("The heartbeat interval must be greater than zero.");
+        }
+        this.primary = primary;
+        this.replica = replica;
+        this.readYourWrites = readYourWrites;
+        this.maxLagMillis = maxLag.toMillis();
+        this.heartbeatIntervalNanos = heartbeatInterval.toNanos();
+        this.monitor = new Thread(this::monitorLoop, "person-replica-monitor");
+        this.monitor.setDaemon(true);
+        this.monitor.start();
+    }
+
+    /**
+     * Attaches a trigram name index that the services of both routes use for substring search.
+     *
+     * @param nameIndex the index to use, or null to stop using one
+     */
+    public void setNameIndex(PersonNameIndex nameIndex) {
+        this.nameIndex = nameIndex;
+    }
+
+    /**
+     * Attaches the metrics the operations of each route are recorded in.
+     *
+     * @param primaryMetrics the metrics of the operations run on the primary, or null to stop recording them
+     * @param replicaMetrics the metrics of the operations run on the replica, or null to stop recording them
+     */
+    public void setMetrics(PersonServiceMetrics primaryMetrics, PersonServiceMetrics replicaMetrics) {
+        this.primaryMetrics = primaryMetrics;
+        this.replicaMetrics = replicaMetrics;
+    }
+
+    /**
+     * Opens a session, the scope in which writes are guaranteed to be visible to the reads that follow them.
+     *
+     * @return the new session
+     */
+    public Session openSession() {
+        return new Session();
+    }
+
+    private void monitorLoop() {
+        while (running) {
+            writeHeartbeat();
+            checkReplica();
+            LockSupport.parkNanos(heartbeatIntervalNanos);
+        }
+    }
+
+    private void writeHeartbeat() {
+        EntityManager entityManager = null;
+        try {
+            entityManager = primary.createEntityManager();
+            entityManager.getTransaction().begin();
+            entityManager.merge(new ReplicationHeartbeat(HEARTBEAT_ID, System.currentTimeMillis()));
+            entityManager.getTransaction().commit();
+        } catch (RuntimeException e) {
+            if (entityManager != null && entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            System.err.println("Failed to write the replication heartbeat: " + e.getMessage());
+        } finally {
+            if (entityManager != null) {
+                entityManager.close();
+            }
+        }
+    }
+
+    private void checkReplica() {
+        EntityManager entityManager = null;
+        try {
+            entityManager = replica.createEntityManager();
+            ReplicationHeartbeat heartbeat = entityManager.find(ReplicationHeartbeat.class, HEARTBEAT_ID);
+            replicatedMillis = heartbeat != null ? heartbeat.getBeatAt() : NOT_REPLICATED;
+            if (!replicaAvailable) {
+                System.err.println("The replica is available.");
+            }
+            replicaAvailable = true;
+        } catch (RuntimeException e) {
+            replicaUnavailable(e);
+        } finally {
+            if (entityManager != null) {
+                entityManager.close();
+            }
+        }
+    }
+
+    private void replicaUnavailable(RuntimeException e) {
+        if (replicaAvailable) {
+            System.err.println("The replica is unavailable: " + e.getMessage());
+        }
+        replicaAvailable = false;
+    }
+
+    /**
+     * Returns whether the replica answered the last check and every read since.
+     *
+     * @return true if the replica is available
+     */
+    public boolean isReplicaAvailable() {
+        return replicaAvailable;
+    }
+
+    /**
+     * Returns how far the replica is behind the primary, according to the last check.
+     *
+     * @return the replica lag in milliseconds, or Long.MAX_VALUE if no heartbeat has reached the replica yet
+     */
+    public long getReplicaLagMillis() {
+        long replicated = replicatedMillis;
+        return replicated == NOT_REPLICATED ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - replicated);
+    }
+
+    private boolean isReplicaUsable() {
+        return replicaAvailable && getReplicaLagMillis() <= maxLagMillis;
+    }
+
+    private boolean hasReplicated(long committedMillis) {
+        return replicatedMillis > committedMillis;
+    }
+
+    /**
+     * Returns the number of reads served by the replica.
+     *
+     * @return the number of replica reads
+     */
+    public long getReplicaReadCount() {
+        return replicaReads.get();
+    }
+
+    /**
+     * Returns the number of reads sent to the primary because the session had writes the replica had not applied.
+     *
+     * @return the number of sticky reads
+     */
+    public long getStickyReadCount() {
+        return stickyReads.get();
+    }
+
+    /**
+     * Returns the number of reads repeated on the primary because the replica returned an older version of a
+     * person than the session wrote.
+     *
+     * @return the number of stale reads
+     */
+    public long getStaleReadCount() {
+        return staleReads.get();
+    }
+
+    /**
+     * Returns the number of reads sent to the primary because the replica was unavailable or lagged too far behind.
+     *
+     * @return the number of fallback reads
+     */
+    public long getFallbackReadCount() {
+        return fallbackReads.get();
+    }
+
+    /**
+     * Stops the replica monitor. The factories stay open.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(monitor);
+        try {
+            monitor.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <R> R inUnitOfWork(EntityManagerFactory factory, PersonServiceMetrics metrics,
+                               Function<PersonService, R> work) {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            PersonService personService = new PersonService(entityManager);
+            personService.setNameIndex(nameIndex);
+            personService.setMetrics(metrics);
+            return work.apply(personService);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * A write the replica may not have applied yet, with the version of the person it left on the primary.
+     */
+    private record PendingWrite(int version, boolean removed, long committedMillis) {
+    }
+
+    /**
+     * The writes of one caller and the reads that must see them. A session is safe to use from several threads.
+     */
+    public final class Session {
+        // SESSION mode and bulk writes: the time of the last write the replica may be missing
+        private volatile long lastWriteMillis = NOT_REPLICATED;
+        // VERSION mode: the people written by this session, until the replica has applied the writes
+        private final Map<Integer, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+
+        private Session() {
+        }
+
+        /**
+         * Makes the passed entity instance persistent on the primary.
+         *
+         * @param person the entity to persist
+         */
+        public void persist(Person person) {
+            onPrimary(service -> {
+                service.persist(person);
+                return null;
+            });
+            wrote(person);
+        }
+
+        /**
+         * Makes all the passed entity instances persistent on the primary in a single transaction.
+         *
+         * @param people    the entities to persist
+         * @param batchSize the number of entities written per flush
+         * @return the number of entities persisted, or 0 if the transaction was rolled back
+         */
+        public int persistAll(Collection<Person> people, int batchSize) {
+            int count = onPrimary(service -> service.persistAll(people, batchSize));
+            for (Person person : people) {
+                wrote(person);
+            }
+            return count;
+        }
+
+        /**
+         * Merges the state of the given entity into the primary.
+         *
+         * @param person the entity to merge
+         * @return a detached copy of the merged entity, or null if the merge failed
+         */
+        public Person merge(Person person) {
+            Person merged = onPrimary(service -> service.merge(person));
+            wrote(merged);
+            return merged;
+        }
+
+        /**
+         * Removes the entity with the given id from the primary.
+         *
+         * @param id the id of the entity to remove
+         */
+        public void remove(Integer id) {
+            onPrimary(service -> {
+                service.remove(id);
+                return null;
+            });
+            wrote(id, 0, true);
+        }
+
+        /**
+         * Updates the attribute of a Person on the primary. The attribute can be 'name' or 'email'.
+         *
+         * @param id        The ID of the Person to be updated.
+         * @param attribute The attribute of the Person to be updated. This can be 'name' or 'email'.
+         * @param newValue  The new value for the attribute.
+         * @return A string message indicating the result of the operation.
+         */
+        public String updatePersonDb(int id, String attribute, String newValue) {
+            return onPrimary(service -> {
+                String message = service.updatePersonDb(id, attribute, newValue);
+                // The updated person is still managed, so this reads the new version without a query
+                wrote(service.find(id));
+                return message;
+            });
+        }
+
+        /**
+         * Applies a change to one Person on the primary, retrying with backoff when a concurrent writer updated it
+         * first.
+         *
+         * @param id       the id of the person to update
+         * @param mutation the change to apply to the person, which may run more than once
+         * @param policy   how many attempts to make and how long to wait between them
+         * @return a detached copy of the updated person, or null if no such person exists or the update failed
+         */
+        public Person updateWithRetry(Integer id, Consumer<Person> mutation, RetryPolicy policy) {
+            Person updated = onPrimary(service -> service.updateWithRetry(id, mutation, policy));
+            wrote(updated);
+            return updated;
+        }
+
+        /**
+         * Sets an attribute of every Person matching the condition on the primary with a single bulk UPDATE.
+         *
+         * @param where     the condition selecting the rows to update
+         * @param attribute the attribute to update. This can be 'name' or 'email'.
+         * @param newValue  the new value for the attribute
+         * @return the number of rows updated, or 0 if the update failed
+         */
+        public int updateWhere(PersonPredicate where, String attribute, String newValue) {
+            int count = onPrimary(service -> service.updateWhere(where, attribute, newValue));
+            lastWriteMillis = System.currentTimeMillis();
+            return count;
+        }
+
+        /**
+         * Removes every Person with one of the given ids from the primary using bulk DELETE statements.
+         *
+         * @param ids the ids of the people to remove
+         * @return the number of rows deleted, or 0 if the removal failed
+         */
+        public int removeAll(Collection<Integer> ids) {
+            int count = onPrimary(service -> service.removeAll(ids));
+            lastWriteMillis = System.currentTimeMillis();
+            return count;
+        }
+
+        /**
+         * Finds a person by primary key.
+         *
+         * @param id the primary key of the entity
+         * @return the found entity or null if not found
+         */
+        public Person find(Integer id) {
+            return read(service -> service.find(id), person -> isStale(id, person));
+        }
+
+        /**
+         * Finds a read-only view of a person by primary key. A view carries no version, so in VERSION mode a person
+         * the session wrote is read from the primary until the replica has applied the write.
+         *
+         * @param id the primary key of the person
+         * @return the view of the person, or null if not found
+         */
+        public PersonView findView(Integer id) {
+            if (isPending(id)) {
+                return readSticky(service -> service.findView(id));
+            }
+            return read(service -> service.findView(id), view -> false);
+        }
+
+        /**
+         * Finds the people with the given ids using batched IN queries.
+         *
+         * @param ids the primary keys of the people to find
+         * @return the people in the order of the ids, with null for the ids that do not exist
+         */
+        public List<Person> findAll(Collection<Integer> ids) {
+            List<Integer> keys = new ArrayList<>(ids);
+            return read(service -> service.findAll(keys), people -> {
+                for (int i = 0; i < keys.size(); i++) {
+                    if (isStale(keys.get(i), people.get(i))) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+
+        /**
+         * Finds people by name using a named query.
+         *
+         * @param name the name of the person to find
+         * @return the people whose name contains the given name
+         */
+        public List<Person> findPersonByName(String name) {
+            return read(service -> service.findPersonByName(name), this::anyStale);
+        }
+
+        /**
+         * Finds read-only views of the people whose name contains the given name. In VERSION mode, the query is
+         * repeated on the primary if it returns a person the session wrote and the replica has not caught up with.
+         *
+         * @param name the name of the person to find
+         * @return the views of the people whose name contains the given name
+         */
+        public List<PersonView> findPersonViewsByName(String name) {
+            return read(service -> service.findPersonViewsByName(name), views -> {
+                for (PersonView view : views) {
+                    if (pendingWrites.containsKey(view.id())) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+
+        /**
+         * Finds the people whose name contains the given text, using the name index when one is attached.
+         *
+         * @param text the text the name must contain
+         * @return the people whose name contains the text
+         */
+        public List<Person> findPersonByNameContaining(String text) {
+            return read(service -> service.findPersonByNameContaining(text), this::anyStale);
+        }
+
+        private <R> R onPrimary(Function<PersonService, R> work) {
+            return inUnitOfWork(primary, primaryMetrics, work);
+        }
+
+        /**
+         * Runs a read on the replica when it is usable and holds everything the session wrote, and on the primary
+         * otherwise. A replica result that the check finds stale is discarded and the read repeated on the primary.
+         */
+        private <R> R read(Function<PersonService, R> work, Predicate<R> isStale) {
+            if (!isReplicaUsable()) {
+                fallbackReads.incrementAndGet();
+                return onPrimary(work);
+            }
+            if (lastWriteMillis != NOT_REPLICATED && !hasReplicated(lastWriteMillis)) {
+                return readSticky(work);
+            }
+            R result;
+            try {
+                result = inUnitOfWork(replica, replicaMetrics, work);
+            } catch (RuntimeException e) {
+                replicaUnavailable(e);
+                fallbackReads.incrementAndGet();
+                return onPrimary(work);
+            }
+            if (!pendingWrites.isEmpty()) {
+                pendingWrites.values().removeIf(write -> hasReplicated(write.committedMillis()));
+                if (isStale.test(result)) {
+                    staleReads.incrementAndGet();
+                    return onPrimary(work);
+                }
+            }
+            replicaReads.incrementAndGet();
+            return result;
+        }
+
+        private <R> R readSticky(Function<PersonService, R> work) {
+            stickyReads.incrementAndGet();
+            return onPrimary(work);
+        }
+
+        private void wrote(Person person) {
+            if (person != null) {
+                wrote(person.getId(), person.getVersion(), false);
+            }
+        }
+
+        private void wrote(Integer id, int version, boolean removed) {
+            long now = System.currentTimeMillis();
+            if (readYourWrites == ReadYourWrites.VERSION && id != null) {
+                pendingWrites.put(id, new PendingWrite(version, removed, now));
+            } else {
+                lastWriteMillis = now;
+            }
+        }
+
+        private boolean isPending(Integer id) {
+            PendingWrite write = id != null ? pendingWrites.get(id) : null;
+            if (write != null && hasReplicated(write.committedMillis())) {
+                pendingWrites.remove(id, write);
+                return false;
+            }
+            return write != null;
+        }
+
+        private boolean isStale(Integer id, Person person) {
+            PendingWrite write = id != null ? pendingWrites.get(id) : null;
+            if (write == null) {
+                return false;
+            }
+            return write.removed() ? person != null : person == null || person.getVersion() < write.version();
+        }
+
+        private boolean anyStale(List<Person> people) {
+            if (people == null) {
+                return false;
+            }
+            for (Person person : people) {
+                if (isStale(person.getId(), person)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
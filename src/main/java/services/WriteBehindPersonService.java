@@ -0,0 +1,389 @@
+package services;
+
+import domain.Person;
+import metrics.PersonOperation;
+import metrics.PersonServiceMetrics;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityNotFoundException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * A write-behind buffer in front of the database for ingest workloads that can trade a little durability lag for
+ * throughput. Callers enqueue persists, updates and removals and return at once; a background writer collects them
+ * into batches of up to {@code batchSize} mutations, or whatever arrived within {@code maxDelay} of the first one,
+ * and commits each batch in a single transaction. The people a batch updates or removes are loaded with one
+ * PersonService.findAll call, and repeated updates of the same person are coalesced into a single UPDATE by dirty
+ * checking at commit.
+ * <p>
+ * A mutation is only durable once its batch commits. If a batch fails, every mutation in it is retried in a
+ * transaction of its own, so only the failing ones are reported to their failure callbacks; a person that does not
+ * exist is reported as an EntityNotFoundException. When the queue is full, enqueueing blocks until the writer has
+ * made room. Pending mutations are written when the service is closed, and a shutdown hook closes it if the JVM
+ * exits first.
+ */
+public final class WriteBehindPersonService implements AutoCloseable {
+    private static final Consumer<Exception> IGNORE_FAILURE = e -> {
+    };
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final BlockingQueue<Mutation> queue;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final Thread writer;
+    private final Thread shutdownHook;
+    // enqueueing holds the read lock, so close can wait for callers that already passed the closed check
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private boolean closed;
+    private volatile PersonNameIndex nameIndex;
+    private volatile PersonServiceMetrics metrics = PersonServiceMetrics.DISABLED;
+
+    /**
+     * Creates the buffer and starts its writer thread.
+     *
+     * @param entityManagerFactory the factory of the EntityManagers the batches are written with
+     * @param capacity             the maximum number of mutations waiting to be written
+     * @param batchSize            the maximum number of mutations committed in one transaction
+     * @param maxDelay             how long the writer waits for a batch to fill up after its first mutation
+     */
+    public WriteBehindPersonService(EntityManagerFactory entityManagerFactory, int capacity, int batchSize,
+                                    Duration maxDelay) {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Capacity and batch size must be greater than zero.");
+        }
+        this.entityManagerFactory = entityManagerFactory;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.writer = new Thread(this::writeLoop, "person-write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        this.shutdownHook = new Thread(this::close, "person-write-behind-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Attaches a trigram name index that the writer keeps in sync with the mutations it commits.
+     *
+     * @param nameIndex the index to maintain, or null to stop using one
+     */
+    public void setNameIndex(PersonNameIndex nameIndex) {
+        this.nameIndex = nameIndex;
+    }
+
+    /**
+     * Attaches the metrics the writer records its group commits in.
+     *
+     * @param metrics the metrics to record in, or null to stop recording
+     */
+    public void setMetrics(PersonServiceMetrics metrics) {
+        this.metrics = metrics != null ? metrics : PersonServiceMetrics.DISABLED;
+    }
+
+    /**
+     * Enqueues the persist of a new person. The person is given its id when its batch is written.
+     *
+     * @param person    the entity to persist
+     * @param onFailure called on the writer thread if the person cannot be persisted
+     * @throws InterruptedException  if interrupted while waiting for room in the queue
+     * @throws IllegalStateException if the service has been closed
+     */
+    public void persist(Person person, Consumer<Exception> onFailure) throws InterruptedException {
+        enqueue(new Persist(person, failureHandler(onFailure)));
+    }
+
+    /**
+     * Enqueues an update of an attribute of a Person. The attribute can be 'name' or 'email'.
+     *
+     * @param id        the id of the person to update
+     * @param attribute the attribute to update
+     * @param newValue  the new value for the attribute
+     * @param onFailure called on the writer thread if the person does not exist or cannot be updated
+     * @throws InterruptedException     if interrupted while waiting for room in the queue
+     * @throws IllegalArgumentException if the attribute is neither 'name' nor 'email'
+     * @throws IllegalStateException    if the service has been closed
+     */
+    public void update(Integer id, String attribute, String newValue, Consumer<Exception> onFailure)
+            throws InterruptedException {
+        Consumer<Person> change;
+        if (attribute.equalsIgnoreCase("name")) {
+            change = person -> person.setName(newValue);
+        } else if (attribute.equalsIgnoreCase("email")) {
+            change = person -> person.setEmail(newValue);
+        } else {
+            throw new IllegalArgumentException("Invalid attribute. Only 'name' and 'email' can be updated.");
+        }
+        enqueue(new Update(id, change, failureHandler(onFailure)));
+    }
+
+    /**
+     * Enqueues the removal of a Person.
+     *
+     * @param id        the id of the person to remove
+     * @param onFailure called on the writer thread if the person does not exist or cannot be removed
+     * @throws InterruptedException  if interrupted while waiting for room in the queue
+     * @throws IllegalStateException if the service has been closed
+     */
+    public void remove(Integer id, Consumer<Exception> onFailure) throws InterruptedException {
+        enqueue(new Remove(id, failureHandler(onFailure)));
+    }
+
+    /**
+     * Waits until every mutation enqueued before this call has been written or reported as failed.
+     *
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws IllegalStateException if the service has been closed
+     */
+    public void flush() throws InterruptedException {
+        Barrier barrier = new Barrier(new CountDownLatch(1));
+        enqueue(barrier);
+        barrier.written().await();
+    }
+
+    /**
+     * Returns the number of mutations waiting in the queue, not counting the batch being written.
+     *
+     * @return the number of queued mutations
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting mutations, writes the pending ones and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            queue.put(Shutdown.INSTANCE);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while writing the pending mutations; " + queue.size() + " were lost.");
+        }
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // The JVM is already shutting down
+            }
+        }
+    }
+
+    private void enqueue(Mutation mutation) throws InterruptedException {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The write-behind service has been closed.");
+            }
+            queue.put(mutation);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    private void writeLoop() {
+        List<Mutation> batch = new ArrayList<>(batchSize);
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < batchSize && !(batch.get(batch.size() - 1) instanceof Control)) {
+                    long remaining = deadline - System.nanoTime();
+                    Mutation next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Only close stops the writer; keep going until the shutdown marker arrives
+                continue;
+            }
+            Mutation last = batch.get(batch.size() - 1);
+            if (last instanceof Control) {
+                batch.remove(batch.size() - 1);
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+            if (last instanceof Barrier barrier) {
+                barrier.written().countDown();
+            } else if (last instanceof Shutdown) {
+                running = false;
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Commits a batch in one transaction, or each of its mutations in a transaction of its own if that fails.
+     */
+    private void writeBatch(List<Mutation> batch) {
+        long start = metrics.start();
+        List<Mutation> notFound = new ArrayList<>();
+        List<Person> written = new ArrayList<>();
+        try {
+            commit(batch, notFound, written);
+            metrics.success(PersonOperation.GROUP_COMMIT, start, batch.size() - notFound.size());
+        } catch (RuntimeException e) {
+            metrics.failure(PersonOperation.GROUP_COMMIT, start, e);
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+                return;
+            }
+            for (Mutation mutation : batch) {
+                writeBatch(List.of(mutation));
+            }
+            return;
+        }
+        updateNameIndex(batch, written);
+        for (Mutation mutation : notFound) {
+            fail(mutation, new EntityNotFoundException("No entity with id " + idOf(mutation) + " found."));
+        }
+    }
+
+    private void commit(List<Mutation> batch, List<Mutation> notFound, List<Person> written) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            Set<Integer> ids = new LinkedHashSet<>();
+            for (Mutation mutation : batch) {
+                if (!(mutation instanceof Persist)) {
+                    ids.add(idOf(mutation));
+                }
+            }
+            Map<Integer, Person> people = new HashMap<>();
+            entityManager.getTransaction().begin();
+            if (!ids.isEmpty()) {
+                PersonService personService = new PersonService(entityManager);
+                personService.setMetrics(metrics);
+                for (Person person : personService.findAll(ids)) {
+                    if (person != null) {
+                        people.put(person.getId(), person);
+                    }
+                }
+            }
+            for (Mutation mutation : batch) {
+                if (mutation instanceof Persist persist) {
+                    entityManager.persist(persist.person());
+                    written.add(persist.person());
+                } else if (mutation instanceof Update update) {
+                    Person person = people.get(update.id());
+                    if (person == null) {
+                        notFound.add(mutation);
+                    } else {
+                        // Later updates of the same person change the same managed entity, so it is written once
+                        update.change().accept(person);
+                        written.add(person);
+                    }
+                } else if (mutation instanceof Remove remove) {
+                    Person person = people.remove(remove.id());
+                    if (person == null) {
+                        notFound.add(mutation);
+                    } else {
+                        entityManager.remove(person);
+                    }
+                }
+            }
+            entityManager.getTransaction().commit();
+        } catch (RuntimeException e) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            // Persisting assigned ids that were rolled back; a retry must generate new ones
+            for (Mutation mutation : batch) {
+                if (mutation instanceof Persist persist) {
+                    persist.person().setId(null);
+                }
+            }
+            throw e;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private void updateNameIndex(List<Mutation> batch, List<Person> written) {
+        PersonNameIndex index = nameIndex;
+        if (index == null) {
+            return;
+        }
+        for (Person person : written) {
+            index.put(person.getId(), person.getName());
+        }
+        for (Mutation mutation : batch) {
+            if (mutation instanceof Remove remove) {
+                index.remove(remove.id());
+            }
+        }
+    }
+
+    private static Integer idOf(Mutation mutation) {
+        if (mutation instanceof Update update) {
+            return update.id();
+        } else if (mutation instanceof Remove remove) {
+            return remove.id();
+        }
+        return ((Persist) mutation).person().getId();
+    }
+
+    private static void fail(Mutation mutation, Exception e) {
+        Consumer<Exception> onFailure = mutation instanceof Persist persist ? persist.onFailure()
+                : mutation instanceof Update update ? update.onFailure()
+                : ((Remove) mutation).onFailure();
+        try {
+            onFailure.accept(e);
+        } catch (RuntimeException callbackError) {
+            System.err.println("Failure callback threw an exception: " + callbackError.getMessage());
+        }
+    }
+
+    private static Consumer<Exception> failureHandler(Consumer<Exception> onFailure) {
+        return onFailure != null ? onFailure : IGNORE_FAILURE;
+    }
+
+    private sealed interface Mutation permits Persist, Update, Remove, Control {
+    }
+
+    private sealed interface Control extends Mutation permits Barrier, Shutdown {
+    }
+
+    private record Persist(Person person, Consumer<Exception> onFailure) implements Mutation {
+    }
+
+    private record Update(Integer id, Consumer<Person> change, Consumer<Exception> onFailure) implements Mutation {
+    }
+
+    private record Remove(Integer id, Consumer<Exception> onFailure) implements Mutation {
+    }
+
+    private record Barrier(CountDownLatch written) implements Control {
+    }
+
+    private enum Shutdown implements Control {
+        INSTANCE
+    }
+}